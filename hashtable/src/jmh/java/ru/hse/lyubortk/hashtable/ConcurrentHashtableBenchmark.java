@@ -0,0 +1,84 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lookup throughput of {@link ConcurrentHashtable} with {@link Hashtable} guarded
+ * by a global lock. Run with different numbers of threads to see how throughput scales,
+ * e.g. {@code gradle jmh -Pjmh.include=ConcurrentHashtable -Pjmh.args="-t 8"}.
+ * Mixed benchmarks do one put for every 16 lookups.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentHashtableBenchmark {
+    private static final int SIZE = 1 << 16;
+    private static final int PUT_PERIOD = 16;
+
+    private final String[] keys = new String[SIZE];
+    private final ConcurrentHashtable concurrentTable = new ConcurrentHashtable();
+    private final Hashtable lockedTable = new Hashtable();
+
+    /** Position of a thread in the array of keys. Threads start at different positions. */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int nextKey = (int) Thread.currentThread().getId() * 7919;
+    }
+
+    @Setup
+    public void createTables() {
+        var random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = "key-" + random.nextLong();
+            concurrentTable.put(keys[i], keys[i]);
+            lockedTable.put(keys[i], keys[i]);
+        }
+    }
+
+    @Benchmark
+    public String concurrentGet(ThreadState state) {
+        return concurrentTable.get(keys[nextKey(state)]);
+    }
+
+    @Benchmark
+    public String lockedGet(ThreadState state) {
+        var key = keys[nextKey(state)];
+        synchronized (lockedTable) {
+            return lockedTable.get(key);
+        }
+    }
+
+    @Benchmark
+    public String concurrentMixed(ThreadState state) {
+        int keyIndex = nextKey(state);
+        var key = keys[keyIndex];
+        if (keyIndex % PUT_PERIOD == 0) {
+            return concurrentTable.put(key, key);
+        }
+        return concurrentTable.get(key);
+    }
+
+    @Benchmark
+    public String lockedMixed(ThreadState state) {
+        int keyIndex = nextKey(state);
+        var key = keys[keyIndex];
+        synchronized (lockedTable) {
+            if (keyIndex % PUT_PERIOD == 0) {
+                return lockedTable.put(key, key);
+            }
+            return lockedTable.get(key);
+        }
+    }
+
+    private static int nextKey(ThreadState state) {
+        int key = state.nextKey & (SIZE - 1);
+        state.nextKey = key + 1;
+        return key;
+    }
+}
@@ -0,0 +1,169 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Hashtable} which uses separate chaining with {@link OpenAddressingHashtable}.
+ * Lookups cycle through keys which are stored in the tables or are missing from them.
+ * Build benchmarks fill a new table with all keys. Run them with
+ * {@code gradle jmh -Pjmh.args="-prof gc"} to get memory per entry: gc.alloc.rate.norm of
+ * a build benchmark divided by the size is the number of bytes allocated per entry, including
+ * arrays which are dropped by resizes. Keys and values are created in advance, so they are
+ * not counted.
+ * Put benchmarks sample latency of puts into tables which grow from empty in every iteration,
+ * so their high percentiles show pauses caused by resizes.
+ * SipHash benchmarks show the cost of a keyed hash function compared with the default one.
+ * Colliding benchmarks look up keys which all fall into one bucket, so they measure lookups
+ * in a treeified bucket.
+ * Bulk load benchmarks build a table of all keys by {@link Hashtable#bulkLoad} from
+ * a sequential or a parallel stream, and should be compared with chainedBuild.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HashtableBenchmark {
+    /** Number of keys in the only bucket of the colliding table */
+    private static final int COLLIDING_KEYS_NUMBER = 1000;
+
+    @Param({"1000", "1000000"})
+    private int size;
+
+    private String[] keys;
+    private String[] missingKeys;
+    private Hashtable chainedTable;
+    private Hashtable sipHashTable;
+    private Hashtable collidingTable;
+    private OpenAddressingHashtable openAddressingTable;
+    private Hashtable growingChainedTable;
+    private OpenAddressingHashtable growingOpenAddressingTable;
+    private int nextKey = 0;
+
+    @Setup
+    public void createTables() {
+        var random = new Random(42);
+        keys = new String[size];
+        missingKeys = new String[size];
+        for (int i = 0; i < size; i++) {
+            // the same prefix makes keys compared by equals more expensive, like real keys
+            keys[i] = "key-" + random.nextLong();
+            missingKeys[i] = "missing-" + random.nextLong();
+        }
+        chainedTable = buildChainedTable();
+        openAddressingTable = buildOpenAddressingTable();
+        sipHashTable = new Hashtable(16, 0.5, 0.125, new SipHashFunction());
+        for (var key : keys) {
+            sipHashTable.put(key, key);
+        }
+        collidingTable = new Hashtable(16, 0.5, 0.125, key -> 0);
+        for (int i = 0; i < COLLIDING_KEYS_NUMBER; i++) {
+            collidingTable.put(keys[i], keys[i]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createGrowingTables() {
+        growingChainedTable = new Hashtable();
+        growingOpenAddressingTable = new OpenAddressingHashtable();
+    }
+
+    @Benchmark
+    public String chainedGet() {
+        return chainedTable.get(keys[nextKey()]);
+    }
+
+    @Benchmark
+    public String openAddressingGet() {
+        return openAddressingTable.get(keys[nextKey()]);
+    }
+
+    @Benchmark
+    public String sipHashGet() {
+        return sipHashTable.get(keys[nextKey()]);
+    }
+
+    @Benchmark
+    public String collidingGet() {
+        return collidingTable.get(keys[nextKey() % COLLIDING_KEYS_NUMBER]);
+    }
+
+    @Benchmark
+    public String chainedGetMissing() {
+        return chainedTable.get(missingKeys[nextKey()]);
+    }
+
+    @Benchmark
+    public String openAddressingGetMissing() {
+        return openAddressingTable.get(missingKeys[nextKey()]);
+    }
+
+    @Benchmark
+    public Hashtable chainedBuild() {
+        return buildChainedTable();
+    }
+
+    @Benchmark
+    public Hashtable bulkLoad() {
+        return Hashtable.bulkLoad(Arrays.stream(keys).map(key -> Map.entry(key, key)), size);
+    }
+
+    @Benchmark
+    public Hashtable parallelBulkLoad() {
+        return Hashtable.bulkLoad(Arrays.stream(keys).parallel().map(key -> Map.entry(key, key)),
+                size);
+    }
+
+    @Benchmark
+    public OpenAddressingHashtable openAddressingBuild() {
+        return buildOpenAddressingTable();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public String chainedPut() {
+        var key = keys[nextKey()];
+        return growingChainedTable.put(key, key);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public String openAddressingPut() {
+        var key = keys[nextKey()];
+        return growingOpenAddressingTable.put(key, key);
+    }
+
+    /** Updates a counter stored by existing key, like a counting workload does. */
+    @Benchmark
+    public String chainedMerge() {
+        return chainedTable.merge(keys[nextKey()], "1", (a, b) -> a.length() < 32 ? a + b : b);
+    }
+
+    private Hashtable buildChainedTable() {
+        var table = new Hashtable();
+        for (var key : keys) {
+            table.put(key, key);
+        }
+        return table;
+    }
+
+    private OpenAddressingHashtable buildOpenAddressingTable() {
+        var table = new OpenAddressingHashtable();
+        for (var key : keys) {
+            table.put(key, key);
+        }
+        return table;
+    }
+
+    private int nextKey() {
+        int key = nextKey;
+        nextKey = key + 1 == size ? 0 : key + 1;
+        return key;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares startup of a table from a file written by {@link Hashtable#save} with rebuilding
+ * it by {@link Hashtable#put}, and lookups in the mapped table with lookups in the heap one.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedHashtableBenchmark {
+    @Param({"1000000"})
+    private int size;
+
+    private Path file;
+    private Hashtable table;
+    private MappedHashtable mappedTable;
+    private int nextKey = 0;
+
+    @Setup
+    public void saveTable() throws IOException {
+        table = buildTable();
+        file = Files.createTempFile("hashtable", ".bin");
+        table.save(file);
+        mappedTable = Hashtable.openMapped(file);
+    }
+
+    @TearDown
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Hashtable rebuildStartup() {
+        return buildTable();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MappedHashtable mappedStartup() throws IOException {
+        return Hashtable.openMapped(file);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String heapGet() {
+        return table.get(getKey(nextKey()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String mappedGet() {
+        return mappedTable.get(getKey(nextKey()));
+    }
+
+    private Hashtable buildTable() {
+        var newTable = new Hashtable();
+        for (int i = 0; i < size; i++) {
+            newTable.put(getKey(i), Integer.toString(i));
+        }
+        return newTable;
+    }
+
+    private int nextKey() {
+        int key = nextKey;
+        nextKey = key + 1 == size ? 0 : key + 1;
+        return key;
+    }
+
+    private static String getKey(int i) {
+        return "key-" + i;
+    }
+}
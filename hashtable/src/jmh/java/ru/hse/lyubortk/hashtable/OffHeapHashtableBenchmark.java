@@ -0,0 +1,86 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Hashtable} with {@link OffHeapHashtable} filled with many pairs.
+ * The full GC benchmark measures a pause of {@link System#gc} while the table is alive, which
+ * grows with the number of heap objects the collector has to traverse. It also reports heap
+ * footprint per pair after the collection as the heapBytesPerPair secondary result.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+public class OffHeapHashtableBenchmark {
+    @Param({"chained", "offHeap"})
+    private String implementation;
+
+    @Param({"1000000", "5000000"})
+    private int size;
+
+    private Hashtable chainedTable;
+    private OffHeapHashtable offHeapTable;
+    private int nextKey = 0;
+    /** Used heap before the table is filled */
+    private long heapBefore;
+
+    /** Heap footprint which is reported along with the results of the full GC benchmark. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long heapBytesPerPair;
+    }
+
+    @Setup
+    public void fillTable() {
+        System.gc();
+        heapBefore = getUsedHeap();
+        if (implementation.equals("chained")) {
+            chainedTable = new Hashtable();
+            for (int i = 0; i < size; i++) {
+                chainedTable.put(getKey(i), getValue(i));
+            }
+        } else {
+            offHeapTable = new OffHeapHashtable();
+            for (int i = 0; i < size; i++) {
+                offHeapTable.put(getKey(i), getValue(i));
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void fullGc(Footprint footprint) {
+        System.gc();
+        footprint.heapBytesPerPair = (getUsedHeap() - heapBefore) / size;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public String get() {
+        int key = nextKey;
+        nextKey = key + 1 == size ? 0 : key + 1;
+        return chainedTable != null ? chainedTable.get(getKey(key))
+                : offHeapTable.get(getKey(key));
+    }
+
+    private static String getKey(int i) {
+        return "key-" + i;
+    }
+
+    private static String getValue(int i) {
+        return "value-" + Integer.toHexString(i * 31);
+    }
+
+    private static long getUsedHeap() {
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
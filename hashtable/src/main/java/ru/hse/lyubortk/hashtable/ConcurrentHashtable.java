@@ -0,0 +1,221 @@
+package ru.hse.lyubortk.hashtable;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** A thread-safe hash table which has the same interface as {@link Hashtable}.
+ *  Keys are split into segments by their hash codes, and every segment is a separate
+ *  chained hash table with its own lock. Modifying operations lock only one segment, so
+ *  threads which modify different segments do not wait for each other, and a segment
+ *  grows without stopping operations on other segments.
+ *  Lookups never take locks. Nodes of chains are immutable except for their values, so
+ *  a reader always sees a consistent chain: either the one before a modification or
+ *  the one after it. A segment publishes its grown bucket array only when all nodes are
+ *  copied to it. {@link ConcurrentHashtable#size} may be inaccurate while the table is being
+ *  modified. */
+public class ConcurrentHashtable {
+
+    /** Default number of segments */
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /** Initial number of buckets in every segment */
+    private static final int INITIAL_SEGMENT_CAPACITY = 4;
+
+    /** Segments of the table. Length is a power of two. */
+    private final Segment[] segments;
+
+    /** Shift which leaves the bits of a mixed hash code which choose a segment */
+    private final int segmentShift;
+
+
+    /** Default constructor which creates 16 segments. */
+    public ConcurrentHashtable() {
+        this(DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /** A constructor with the expected number of concurrently modifying threads as argument.
+     *  The number of segments is the least power of two which is not less than it.
+     * @param concurrencyLevel expected number of threads which modify the table
+     * @throws IllegalArgumentException if concurrencyLevel is not positive */
+    public ConcurrentHashtable(int concurrencyLevel) {
+        if (concurrencyLevel < 1 || concurrencyLevel > 1 << 16) {
+            throw new IllegalArgumentException();
+        }
+        int segmentsNumber = Integer.highestOneBit(concurrencyLevel * 2 - 1);
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentsNumber);
+        segments = new Segment[segmentsNumber];
+        for (int i = 0; i < segmentsNumber; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /** Returns number of items (pairs of key and mapped value) stored in the hash table.
+     *  The result may be inaccurate if the table is modified concurrently.
+     * @return number of stored elements */
+    public int size() {
+        long size = 0;
+        for (var segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /** Checks whether some value is stored by particular key
+     * @param key a non-null key to search for mapped value
+     * @return whether some value is mapped to the key
+     * @throws IllegalArgumentException if key is null */
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    /** Returns value mapped to particular key or null if the key is not in the hash table.
+     *  The method does not take locks.
+     * @param key a non-null key to search for mapped value.
+     * @return mapped value or null
+     * @throws IllegalArgumentException if key is null */
+    public String get(String key) {
+        int hash = hash(key);
+        var buckets = getSegment(hash).buckets;
+        var node = buckets.get(hash & (buckets.length() - 1));
+        for (; node != null; node = node.next) {
+            if (node.hash == hash && node.key.equals(key)) {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /** Maps value to key. Both arguments have to be non-null.
+     * @param key a non-null key to map value to
+     * @param value a non-null value to be mapped to key
+     * @return previous value stored by that key or null if there was none
+     * @exception IllegalArgumentException if any of arguments are null */
+    public String put(String key, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+
+        int hash = hash(key);
+        return getSegment(hash).put(key, hash, value);
+    }
+
+    /** Removes pair of (key, mapped value) from hash table.
+     * @param key a non-null key to search mapped value
+     * @return a value that was mapped to this key or null if there was none
+     * @throws IllegalArgumentException if key is null */
+    public String remove(String key) {
+        int hash = hash(key);
+        return getSegment(hash).remove(key, hash);
+    }
+
+    /** Removes everything from hash table. Segments are cleared one by one, so pairs
+     *  which are added concurrently may stay in the table. */
+    public void clear() {
+        for (var segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /** Chooses a segment by the high bits of the hash multiplied by the golden ratio, which
+     *  depend on all bits of the hash. Short keys have hash codes with zero high bits. */
+    private Segment getSegment(int hash) {
+        // a shift by 32 does not change the value, so a single segment needs a special case
+        return segments.length == 1 ? segments[0]
+                : segments[(hash * 0x9E3779B9) >>> segmentShift];
+    }
+
+    /** Calculates hash code of key by {@link HashFunction#DEFAULT}.
+     * @param key a non-null key
+     * @return spread hash code
+     * @throws IllegalArgumentException if key is null */
+    private static int hash(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        return HashFunction.DEFAULT.hash(key);
+    }
+
+    /** Inner class which represents a part of the table. Its fields are modified only under
+     *  the lock of the segment. */
+    private static class Segment {
+
+        /** Number of pairs stored in the segment */
+        private volatile int size;
+
+        /** Array of chains. A grown array replaces the old one only when it is filled. */
+        private volatile AtomicReferenceArray<Node> buckets =
+                new AtomicReferenceArray<>(INITIAL_SEGMENT_CAPACITY);
+
+        private synchronized String put(String key, int hash, String value) {
+            int bucket = hash & (buckets.length() - 1);
+            var head = buckets.get(bucket);
+            for (var node = head; node != null; node = node.next) {
+                if (node.hash == hash && node.key.equals(key)) {
+                    String prevValue = node.value;
+                    node.value = value;
+                    return prevValue;
+                }
+            }
+
+            buckets.set(bucket, new Node(key, hash, value, head));
+            size++;
+            if (size * 2 > buckets.length()) {
+                grow();
+            }
+            return null;
+        }
+
+        private synchronized String remove(String key, int hash) {
+            int bucket = hash & (buckets.length() - 1);
+            var head = buckets.get(bucket);
+            for (var node = head; node != null; node = node.next) {
+                if (node.hash == hash && node.key.equals(key)) {
+                    // nodes before the removed one are copied, because links are immutable
+                    var newHead = node.next;
+                    for (var prevNode = head; prevNode != node; prevNode = prevNode.next) {
+                        newHead = new Node(prevNode.key, prevNode.hash, prevNode.value, newHead);
+                    }
+                    buckets.set(bucket, newHead);
+                    size--;
+                    return node.value;
+                }
+            }
+            return null;
+        }
+
+        private synchronized void clear() {
+            buckets = new AtomicReferenceArray<>(INITIAL_SEGMENT_CAPACITY);
+            size = 0;
+        }
+
+        /** Doubles the number of buckets. Nodes are copied, so readers may still use
+         *  the old array. */
+        private void grow() {
+            var oldBuckets = buckets;
+            var newBuckets = new AtomicReferenceArray<Node>(oldBuckets.length() * 2);
+            int mask = newBuckets.length() - 1;
+            for (int i = 0; i < oldBuckets.length(); i++) {
+                for (var node = oldBuckets.get(i); node != null; node = node.next) {
+                    int bucket = node.hash & mask;
+                    newBuckets.lazySet(bucket,
+                            new Node(node.key, node.hash, node.value, newBuckets.get(bucket)));
+                }
+            }
+            buckets = newBuckets;
+        }
+    }
+
+    /** Inner class which represents a node of a chain. */
+    private static class Node {
+        private final String key;
+        private final int hash;
+        private volatile String value;
+        private final Node next;
+
+        private Node(String key, int hash, String value, Node next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
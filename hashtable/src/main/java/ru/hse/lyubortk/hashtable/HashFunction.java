@@ -0,0 +1,19 @@
+package ru.hse.lyubortk.hashtable;
+
+/** A function which calculates hash codes of keys for {@link Hashtable}. Lower bits of
+ *  the result choose a bucket, so they have to depend on all characters of the key. */
+@FunctionalInterface
+public interface HashFunction {
+
+    /** Hash function which mixes higher bits of {@link String#hashCode} into lower ones.
+     *  It is fast, but colliding keys are easy to find. */
+    HashFunction DEFAULT = key -> {
+        int hashCode = key.hashCode();
+        return hashCode ^ (hashCode >>> 16);
+    };
+
+    /** Calculates hash code of key.
+     * @param key a non-null key
+     * @return hash code */
+    int hash(String key);
+}
@@ -1,35 +1,138 @@
 package ru.hse.lyubortk.hashtable;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /** A simple Hash table class. Both key and stored value are {@link String}s.
  *  Hash table implements separate chaining method and uses {@link MyList}
- *  for buckets. */
+ *  for buckets. A bucket which gets more than 8 pairs is converted to a red-black tree
+ *  ordered by keys, so lookups in it take logarithmic time even if a lot of keys collide.
+ *  It is converted back to a list when it has 6 pairs or less.
+ *  When the table grows, pairs are not moved to the new bucket array at once. Instead,
+ *  every {@link Hashtable#put} and {@link Hashtable#remove} moves a few buckets of the old
+ *  array, and lookups search in both arrays until the old one is empty. So no single
+ *  operation has to move all pairs.
+ *  The table doubles the number of buckets when the load factor (number of pairs per bucket)
+ *  exceeds the maximum one, and halves it when the load factor falls below the minimum one,
+ *  but never below the initial number of buckets. The minimum load factor is less than
+ *  the half of the maximum one, so a resized table needs many operations to be resized back,
+ *  even if its size changes near a threshold.
+ *  The number of buckets is always a power of two, and a bucket is chosen by the lower bits
+ *  of the hash code of a key, which is calculated by a {@link HashFunction}. Tables which
+ *  store keys chosen by untrusted users should use {@link SipHashFunction}, so that
+ *  the keys cannot be made to fall into the same bucket. */
 public class Hashtable {
 
+    /** Default number of buckets */
+    private static final int DEFAULT_BUCKETS_NUMBER = 16;
+
+    /** Default maximum load factor */
+    private static final double DEFAULT_MAX_LOAD_FACTOR = 0.5;
+
+    /** Default minimum load factor */
+    private static final double DEFAULT_MIN_LOAD_FACTOR = 0.125;
+
+    /** A list bucket is converted to a tree when it gets more pairs than that */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /** A tree bucket is converted to a list when it has that number of pairs or less. It is less
+     *  than {@link Hashtable#TREEIFY_THRESHOLD}, so a bucket is not converted back and forth by
+     *  a key which is added and removed repeatedly. */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /** Least number of old buckets moved to the new bucket array by one modifying operation */
+    private static final int REHASH_STEP = 4;
+
+    /** Maximum load factor. The table grows when it is exceeded. */
+    private final double maxLoadFactor;
+
+    /** Minimum load factor. The table shrinks when the load factor is less than it. */
+    private final double minLoadFactor;
+
+    /** The table does not shrink below this number of buckets automatically */
+    private final int minBucketsNumber;
+
+    /** Function which calculates hash codes of keys */
+    private final HashFunction hashFunction;
+
     /** Number of pairs (key, mapped value) stored in the hash table */
     private int size;
 
     /** Number of allocated buckets */
     private int bucketsNumber;
 
-    /** Array of buckets (has {@link Hashtable#bucketsNumber} size) */
-    private MyList[] bucketArray;
+    /** Array of buckets (has {@link Hashtable#bucketsNumber} size). A bucket is either
+     *  a {@link MyList} or a {@link TreeBucket}. Buckets are created when the first pair is added
+     *  to them, so empty buckets may be null. */
+    private Object[] bucketArray;
+
+    /** Bucket array which is being moved to {@link Hashtable#bucketArray} or null */
+    private Object[] oldBucketArray;
+
+    /** Index of the next bucket of {@link Hashtable#oldBucketArray} to be moved. Buckets
+     *  with smaller indices are already empty. */
+    private int rehashIndex;
+
+    /** Number of old buckets moved by one modifying operation. It is chosen so that all buckets
+     *  are moved before the table has to be resized again. */
+    private int rehashStepSize;
 
 
     /** Default constructor which sets initial number of buckets to 16. */
     public Hashtable() {
-        this(16);
+        this(DEFAULT_BUCKETS_NUMBER);
     }
 
-    /** A constructor with initial number of buckets as argument.
-     * @param buckets initial number of buckets */
+    /** A constructor with initial number of buckets as argument. The maximum load factor is 0.5
+     *  and the minimum one is 0.125.
+     * @param buckets initial number of buckets, it is rounded up to a power of two */
     public Hashtable(int buckets) {
-        bucketsNumber = buckets;
-        bucketArray = new MyList[buckets];
-        for (int i = 0; i< buckets; i++) {
-            bucketArray[i] = new MyList();
+        this(buckets, DEFAULT_MAX_LOAD_FACTOR, DEFAULT_MIN_LOAD_FACTOR);
+    }
+
+    /** A constructor with initial number of buckets and load factors as arguments.
+     *  Keys are hashed by {@link HashFunction#DEFAULT}.
+     * @param buckets initial number of buckets, it has to be positive and is rounded up to
+     * a power of two
+     * @param maxLoadFactor maximum number of pairs per bucket, it has to be positive
+     * @param minLoadFactor minimum number of pairs per bucket, it has to be non-negative and
+     * less than the half of maxLoadFactor. Zero means that the table never shrinks by itself
+     * @throws IllegalArgumentException if any of arguments are out of range */
+    public Hashtable(int buckets, double maxLoadFactor, double minLoadFactor) {
+        this(buckets, maxLoadFactor, minLoadFactor, HashFunction.DEFAULT);
+    }
+
+    /** A constructor with initial number of buckets, load factors and hash function
+     *  as arguments.
+     * @param buckets initial number of buckets, it has to be positive and is rounded up to
+     * a power of two
+     * @param maxLoadFactor maximum number of pairs per bucket, it has to be positive
+     * @param minLoadFactor minimum number of pairs per bucket, it has to be non-negative and
+     * less than the half of maxLoadFactor. Zero means that the table never shrinks by itself
+     * @param hashFunction a non-null function which calculates hash codes of keys
+     * @throws IllegalArgumentException if any of arguments are out of range or null */
+    public Hashtable(int buckets, double maxLoadFactor, double minLoadFactor,
+                     HashFunction hashFunction) {
+        if (buckets < 1 || buckets > 1 << 30 || !(maxLoadFactor > 0) || !(minLoadFactor >= 0)
+                || minLoadFactor * 2 >= maxLoadFactor || hashFunction == null) {
+            throw new IllegalArgumentException();
         }
+        this.maxLoadFactor = maxLoadFactor;
+        this.minLoadFactor = minLoadFactor;
+        this.hashFunction = hashFunction;
+        minBucketsNumber = roundUpToPowerOfTwo(buckets);
+        bucketsNumber = minBucketsNumber;
+        bucketArray = new Object[bucketsNumber];
     }
 
     /** Returns number of items (pairs of key and mapped value) stored in the hash table.
@@ -38,20 +141,18 @@ public class Hashtable {
         return size;
     }
 
+    /** Returns number of allocated buckets. */
+    int getBucketsNumber() {
+        return bucketsNumber;
+    }
+
     /** Checks whether some value is stored by particular key
      * @param key a non-null key to search for mapped value
      * @return whether some value is mapped to the key
      * @throws IllegalArgumentException if key is null*/
 
     public boolean contains(String key){
-        int bucket = getBucketIndex(key);
-        for (Object o : bucketArray[bucket]) {
-            var curPair = (StringPair)o;
-            if (curPair.key.equals(key)) {
-                return true;
-            }
-        }
-        return false;
+        return findPair(key) != null;
     }
 
     /** Returns value mapped to particular key or null if the key is not in the hash table
@@ -59,17 +160,12 @@ public class Hashtable {
      * @return mapped value or null
      * @throws IllegalArgumentException if key is null*/
     public String get(String key){
-        int bucket = getBucketIndex(key);
-        for (Object o : bucketArray[bucket]) {
-            var curPair = (StringPair)o;
-            if (curPair.key.equals(key)) {
-                return curPair.val;
-            }
-        }
-        return null;
+        var pair = findPair(key);
+        return pair != null ? pair.val : null;
     }
 
-    /** Maps value to key. Both arguments have to be non-null.
+    /** Maps value to key. Both arguments have to be non-null. If the key is already in the
+     *  hash table, its value is replaced in place.
      * @param key a non-null key to map value to
      * @param value a non-null value to be mapped to key
      * @return previous value stored by that key or null if there was none
@@ -79,97 +175,573 @@ public class Hashtable {
             throw new IllegalArgumentException();
         }
 
-        String prevValue = remove(key);
-        int bucket = getBucketIndex(key);
-        bucketArray[bucket].insertObject(new StringPair(key, value));
-        size++;
-        checkBucketsNumber();
+        var pair = findPair(key);
+        if (pair == null) {
+            addPair(key, value);
+            return null;
+        }
+        String prevValue = pair.val;
+        pair.val = value;
         return prevValue;
     }
 
+    /** Maps value to key if the key is not in the hash table yet.
+     * @param key a non-null key to map value to
+     * @param value a non-null value to be mapped to key
+     * @return value stored by that key or null if there was none and value was mapped
+     * @exception IllegalArgumentException if any of arguments are null */
+    public String putIfAbsent(String key, String value){
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+
+        var pair = findPair(key);
+        if (pair == null) {
+            addPair(key, value);
+            return null;
+        }
+        return pair.val;
+    }
+
+    /** Returns value mapped to key. If the key is not in the hash table, maps the value computed
+     *  by function to it. If function returns null, nothing is mapped. If function itself maps
+     *  a value to the key, that value is kept and returned.
+     * @param key a non-null key to search for mapped value
+     * @param function a non-null function which computes value by key
+     * @return value which is mapped to key or null if there is none
+     * @exception IllegalArgumentException if any of arguments are null */
+    public String computeIfAbsent(String key, Function<? super String, String> function){
+        if (function == null) {
+            throw new IllegalArgumentException();
+        }
+
+        var pair = findPair(key);
+        if (pair != null) {
+            return pair.val;
+        }
+        String value = function.apply(key);
+        // function may modify the table, so the key is searched for again
+        pair = findPair(key);
+        if (pair != null) {
+            return pair.val;
+        }
+        if (value != null) {
+            addPair(key, value);
+        }
+        return value;
+    }
+
+    /** Maps value to key if the key is not in the hash table. Otherwise maps the result of
+     *  function applied to the old and given values to the key, or removes the key if
+     *  the result is null. For example, {@code merge(key, "1", (a, b) -> a + b)} appends
+     *  "1" to the value of key. If function itself modifies the table, the result is applied
+     *  to the table as it is after the call.
+     * @param key a non-null key to map value to
+     * @param value a non-null value to be mapped to key or merged with the old one
+     * @param function a non-null function which merges values
+     * @return new value mapped to key or null if the key was removed
+     * @exception IllegalArgumentException if any of arguments are null */
+    public String merge(String key, String value,
+                        BiFunction<? super String, ? super String, String> function){
+        if (value == null || function == null) {
+            throw new IllegalArgumentException();
+        }
+
+        var pair = findPair(key);
+        if (pair == null) {
+            addPair(key, value);
+            return value;
+        }
+        String newValue = function.apply(pair.val, value);
+        // function may modify the table, so the pair may be removed or replaced by now
+        pair = findPair(key);
+        if (newValue == null) {
+            if (pair != null) {
+                remove(key);
+            }
+        } else if (pair == null) {
+            addPair(key, newValue);
+        } else {
+            pair.val = newValue;
+        }
+        return newValue;
+    }
+
     /** Removes pair of (key, mapped value) from hash table.
      * @param key a non-null key to search mapped value
      * @return a value that was mapped to this key or null if there was none
      * @throws IllegalArgumentException if key is null*/
     public String remove(String key){
-        int bucket = getBucketIndex(key);
-        String foundValue = null;
-        for (Iterator it = bucketArray[bucket].iterator(); it.hasNext();) {
-            var lastPair = (StringPair)it.next();
-            if (lastPair.key.equals(key)){
-                foundValue = lastPair.val;
-                it.remove();
-                size--;
-                break;
-            }
-        }
+        String foundValue = removePair(key);
+        rehashStep();
         checkBucketsNumber();
         return foundValue;
     }
 
-    /** Removes everything from hash table and sets number of buckets to a default value.
+    /** Removes everything from hash table and sets number of buckets to the initial value.
      *  In other words, method makes the hash table identical to one constructed
-     *  by default constructor */
+     *  with the same arguments */
     public void clear(){
-        copyFrom(new Hashtable());
+        size = 0;
+        bucketsNumber = minBucketsNumber;
+        bucketArray = new Object[bucketsNumber];
+        oldBucketArray = null;
+    }
+
+    /** Reduces the number of buckets to the least power of two which keeps the load factor not
+     *  greater than the maximum one. Unlike automatic shrinking, it may go below the initial
+     *  number of buckets. All pairs are moved to the new bucket array at once, so the memory of
+     *  the old one may be reclaimed right away. */
+    public void trimToSize() {
+        int newBucketsNumber = getBucketsNumberFor(size, maxLoadFactor);
+        if (newBucketsNumber < bucketsNumber) {
+            startRehash(newBucketsNumber);
+        }
+        finishRehash();
+    }
+
+    /** Returns statistics of lengths of chains in buckets. Buckets of the old bucket array
+     *  which are not moved yet are counted as well. Long chains mean that the hash function
+     *  spreads the keys poorly.
+     * @return array where the element with index i is the number of buckets with i pairs.
+     * Its length is the maximum length of a chain plus one */
+    public int[] getChainLengthHistogram() {
+        var histogram = new int[1];
+        for (var bucketArray : new Object[][] {oldBucketArray, this.bucketArray}) {
+            if (bucketArray == null) {
+                continue;
+            }
+            for (var bucket : bucketArray) {
+                int chainLength = getChainLength(bucket);
+                if (chainLength >= histogram.length) {
+                    histogram = Arrays.copyOf(histogram, chainLength + 1);
+                }
+                histogram[chainLength]++;
+            }
+        }
+        if (oldBucketArray != null) {
+            // moved buckets of the old array are empty, but they are not buckets anymore
+            histogram[0] -= rehashIndex;
+        }
+        return histogram;
+    }
+
+    /** Writes all pairs to a file in the format of {@link MappedHashtable}, which can be opened
+     *  by {@link Hashtable#openMapped} much faster than the pairs can be put again.
+     * @param path path of the file, which is created or truncated
+     * @throws IOException if the file cannot be written
+     * @throws java.nio.charset.CharacterCodingException if a key or value contains unpaired
+     * surrogates, which cannot be stored in UTF-8 */
+    public void save(Path path) throws IOException {
+        try (var writer = new MappedHashtable.Writer(path, size)) {
+            for (var bucketArray : new Object[][] {oldBucketArray, this.bucketArray}) {
+                if (bucketArray == null) {
+                    continue;
+                }
+                for (var bucket : bucketArray) {
+                    for (Object o : getPairs(bucket)) {
+                        var curPair = (StringPair) o;
+                        writer.add(curPair.key, curPair.val);
+                    }
+                }
+            }
+        }
     }
 
-    /** Checks whether the number of elements in hash table is greater than
-     *  the half of the number of buckets and reallocates memory (doubling the number of buckets)
-     *  if such situation occurs. */
+    /** Maps a file written by {@link Hashtable#save} to memory read-only. Pairs are not
+     *  read until they are looked up.
+     * @param path path of the file
+     * @return read-only hash table which looks up pairs in the mapped file
+     * @throws IOException if the file cannot be read or has wrong format */
+    public static MappedHashtable openMapped(Path path) throws IOException {
+        return MappedHashtable.open(path);
+    }
+
+    /** Maps all keys of other hash table to their values in it. Buckets are allocated for all
+     *  pairs at once, so the table is resized at most once. Hash codes are not calculated again
+     *  if both tables use equal hash functions.
+     * @param other a non-null hash table to copy pairs from
+     * @throws IllegalArgumentException if other is null */
+    public void putAll(Hashtable other) {
+        if (other == null) {
+            throw new IllegalArgumentException();
+        }
+
+        reserve((long) size + other.size);
+        boolean sameHashFunction = other.hashFunction.equals(hashFunction);
+        for (var bucketArray : new Object[][] {other.oldBucketArray, other.bucketArray}) {
+            if (bucketArray == null) {
+                continue;
+            }
+            for (var bucket : bucketArray) {
+                for (Object o : getPairs(bucket)) {
+                    var curPair = (StringPair) o;
+                    int hash = sameHashFunction ? curPair.hash : hash(curPair.key);
+                    var pair = findPair(curPair.key, hash);
+                    if (pair != null) {
+                        pair.val = curPair.val;
+                    } else {
+                        insertPair(new StringPair(curPair.key, hash, curPair.val));
+                        size++;
+                    }
+                }
+            }
+        }
+        finishRehash();
+    }
+
+    /** Creates a hash table with enough buckets for the expected number of pairs and puts
+     *  the pairs into it, so that it is not resized while it is being filled. If a key occurs
+     *  more than once, the last value is mapped to it. The table does not shrink below
+     *  the allocated number of buckets by itself, {@link Hashtable#trimToSize} can do that.
+     * @param pairs a non-null iterator of pairs of non-null keys and values
+     * @param expectedSize expected number of distinct keys, it has to be non-negative
+     * @return new hash table with the default load factors and hash function
+     * @throws IllegalArgumentException if any of arguments, keys or values are null
+     * or expectedSize is negative */
+    public static Hashtable bulkLoad(Iterator<? extends Map.Entry<String, String>> pairs,
+                                     int expectedSize) {
+        if (pairs == null) {
+            throw new IllegalArgumentException();
+        }
+
+        var table = new Hashtable(getBucketsNumberFor(expectedSize, DEFAULT_MAX_LOAD_FACTOR));
+        while (pairs.hasNext()) {
+            var entry = pairs.next();
+            if (entry == null) {
+                throw new IllegalArgumentException();
+            }
+            table.put(entry.getKey(), entry.getValue());
+        }
+        return table;
+    }
+
+    /** Does the same as {@link Hashtable#bulkLoad(Iterator, int)}, but builds the table
+     *  in parallel if the stream is parallel. Then pairs are hashed in parallel and split into
+     *  partitions by the lower bits of their hash codes. Pairs of different partitions fall
+     *  into different buckets, so every partition is put into the buckets by its own thread
+     *  without synchronization. If a key occurs more than once, the value which is the last
+     *  in the encounter order of the stream is mapped to it.
+     * @param pairs a non-null stream of pairs of non-null keys and values
+     * @param expectedSize expected number of distinct keys, it has to be non-negative
+     * @return new hash table with the default load factors and hash function
+     * @throws IllegalArgumentException if any of arguments, keys or values are null
+     * or expectedSize is negative */
+    public static Hashtable bulkLoad(Stream<? extends Map.Entry<String, String>> pairs,
+                                     int expectedSize) {
+        if (pairs == null) {
+            throw new IllegalArgumentException();
+        }
+        if (!pairs.isParallel()) {
+            return bulkLoad(pairs.iterator(), expectedSize);
+        }
+
+        var table = new Hashtable(getBucketsNumberFor(expectedSize, DEFAULT_MAX_LOAD_FACTOR));
+        int partitionsNumber = Math.min(table.bucketsNumber,
+                roundUpToPowerOfTwo(Runtime.getRuntime().availableProcessors() * 4));
+        Map<Integer, List<StringPair>> partitions = pairs.map(entry -> {
+            if (entry == null || entry.getValue() == null) {
+                throw new IllegalArgumentException();
+            }
+            return new StringPair(entry.getKey(), table.hash(entry.getKey()), entry.getValue());
+        }).collect(Collectors.groupingBy(pair -> pair.hash & (partitionsNumber - 1)));
+
+        table.size = partitions.values().parallelStream().mapToInt(partition -> {
+            int added = 0;
+            for (var pair : partition) {
+                var foundPair = findInBucket(
+                        table.bucketArray[getBucketIndex(pair.hash, table.bucketArray)], pair.key);
+                if (foundPair != null) {
+                    foundPair.val = pair.val;
+                } else {
+                    table.insertPair(pair);
+                    added++;
+                }
+            }
+            return added;
+        }).sum();
+        // the expected size may be too small
+        table.reserve(table.size);
+        table.finishRehash();
+        return table;
+    }
+
+    /** Starts growing the table to the number of buckets which keeps the load factor of
+     *  the given number of pairs not greater than the maximum one, if it is greater now.
+     * @param expectedSize number of pairs which are going to be stored */
+    private void reserve(long expectedSize) {
+        if (expectedSize > maxLoadFactor * bucketsNumber) {
+            startRehash(getBucketsNumberFor(expectedSize, maxLoadFactor));
+        }
+    }
+
+    /** Checks whether the load factor is out of range of allowed ones and allocates a new bucket
+     *  array (doubling or halving the number of buckets) if such situation occurs. The pairs
+     *  are moved to it later by {@link Hashtable#rehashStep}. */
     private void checkBucketsNumber() {
-        if (size * 2 > bucketsNumber) {
-            var newHashtable = new Hashtable(bucketsNumber * 2);
-            copyContentTo(newHashtable);
-            copyFrom(newHashtable);
+        if (size > maxLoadFactor * bucketsNumber) {
+            startRehash(bucketsNumber * 2);
+        } else if (size < minLoadFactor * bucketsNumber && bucketsNumber > minBucketsNumber) {
+            startRehash(Math.max(minBucketsNumber, bucketsNumber / 2));
+        }
+    }
+
+    /** Allocates a new bucket array and makes the current one old. If the previous rehash is not
+     *  finished yet, it is finished first.
+     * @param newBucketsNumber number of buckets in the new array */
+    private void startRehash(int newBucketsNumber) {
+        finishRehash();
+        oldBucketArray = bucketArray;
+        rehashIndex = 0;
+        bucketsNumber = newBucketsNumber;
+        bucketArray = new Object[bucketsNumber];
+
+        // number of operations after which the table could be resized again
+        long operationsToGrow = (long) Math.floor(maxLoadFactor * bucketsNumber) - size;
+        long operationsToShrink = size - (long) Math.ceil(minLoadFactor * bucketsNumber);
+        long operations = Math.max(1, Math.min(operationsToGrow, operationsToShrink));
+        rehashStepSize = (int) Math.max(REHASH_STEP,
+                (oldBucketArray.length + operations - 1) / operations);
+    }
+
+    private void finishRehash() {
+        while (oldBucketArray != null) {
+            rehashStep();
         }
     }
 
+    /** Moves next {@link Hashtable#rehashStepSize} buckets of the old bucket array, if there is
+     *  one, to the new bucket array. Pair objects are moved as they are. */
+    private void rehashStep() {
+        if (oldBucketArray == null) {
+            return;
+        }
+        int lastIndex = Math.min(rehashIndex + rehashStepSize, oldBucketArray.length);
+        for (; rehashIndex < lastIndex; rehashIndex++) {
+            for (Object o : getPairs(oldBucketArray[rehashIndex])) {
+                insertPair((StringPair) o);
+            }
+            oldBucketArray[rehashIndex] = null;
+        }
+        if (rehashIndex == oldBucketArray.length) {
+            oldBucketArray = null;
+        }
+    }
 
-    /** Makes hash table identical to one given as argument. Method simply assigns all
-     * fields to ones of argument table.
-     * @param table a hash table to copy fields from */
-    private void copyFrom(Hashtable table) {
-        size = table.size;
-        bucketsNumber = table.bucketsNumber;
-        bucketArray = table.bucketArray;
+    /** Adds pair with a key which is not in the hash table yet and resizes the table if needed. */
+    private void addPair(String key, String value) {
+        insertPair(new StringPair(key, hash(key), value));
+        size++;
+        rehashStep();
+        checkBucketsNumber();
     }
 
-    /** Adds (by calling method {@link Hashtable#put}) every pair of (key, value) stored in the
-     * hash table to another table.
-     * @param table another hash table to copy all stored data to */
-    private void copyContentTo(Hashtable table) {
-        for (int i = 0; i < bucketsNumber; i++) {
-            for (Object o : bucketArray[i]) {
+    /** Removes the pair with particular key from both bucket arrays without resizing the table.
+     * @param key a non-null key to search for
+     * @return the value of removed pair or null if there was none
+     * @throws IllegalArgumentException if key is null*/
+    private String removePair(String key) {
+        int hash = hash(key);
+        String foundValue = removeFromBucket(bucketArray, getBucketIndex(hash, bucketArray), key);
+        if (foundValue == null && isOldBucketPresent(hash)) {
+            foundValue = removeFromBucket(oldBucketArray, getBucketIndex(hash, oldBucketArray),
+                    key);
+        }
+        if (foundValue != null) {
+            size--;
+        }
+        return foundValue;
+    }
+
+    /** Searches for the pair with particular key in both bucket arrays.
+     * @param key a non-null key to search for
+     * @return the pair or null if the key is not in the hash table
+     * @throws IllegalArgumentException if key is null*/
+    private StringPair findPair(String key) {
+        return findPair(key, hash(key));
+    }
+
+    private StringPair findPair(String key, int hash) {
+        var pair = findInBucket(bucketArray[getBucketIndex(hash, bucketArray)], key);
+        if (pair == null && isOldBucketPresent(hash)) {
+            pair = findInBucket(oldBucketArray[getBucketIndex(hash, oldBucketArray)], key);
+        }
+        return pair;
+    }
+
+    /** Checks whether the old bucket array has a bucket which may contain keys with the hash
+     *  code. */
+    private boolean isOldBucketPresent(int hash) {
+        return oldBucketArray != null && getBucketIndex(hash, oldBucketArray) >= rehashIndex;
+    }
+
+    /** Adds the pair to the new bucket array, creating the bucket if needed. A list bucket
+     *  which gets too long is converted to a tree. */
+    private void insertPair(StringPair pair) {
+        int index = getBucketIndex(pair.hash, bucketArray);
+        var bucket = bucketArray[index];
+        if (bucket instanceof TreeBucket) {
+            ((TreeBucket) bucket).put(pair);
+            return;
+        }
+        if (bucket == null) {
+            bucket = new MyList();
+            bucketArray[index] = bucket;
+        }
+        var list = (MyList) bucket;
+        list.insertObject(pair);
+        if (getChainLength(list) > TREEIFY_THRESHOLD) {
+            var tree = new TreeBucket();
+            for (Object o : list) {
                 var curPair = (StringPair) o;
-                table.put(curPair.key, curPair.val);
+                tree.put(curPair);
             }
+            bucketArray[index] = tree;
         }
     }
 
-    /** Calculates index in bucket array.
-     * @param key a non-null key {@link String} to calculate its {@link String#hashCode}
-     * @return number of bucket in which keys with that {@link String#hashCode} are stored
+    private static StringPair findInBucket(Object bucket, String key) {
+        if (bucket instanceof TreeBucket) {
+            return ((TreeBucket) bucket).get(key);
+        }
+        if (bucket == null) {
+            return null;
+        }
+        for (Object o : (MyList) bucket) {
+            var curPair = (StringPair)o;
+            if (curPair.key.equals(key)) {
+                return curPair;
+            }
+        }
+        return null;
+    }
+
+    /** Removes the pair with particular key from the bucket. A tree bucket which gets short
+     *  enough is converted to a list.
+     * @param bucketArray array which contains the bucket
+     * @param index index of the bucket in the array
+     * @param key a non-null key to search for
+     * @return the value of removed pair or null if there was none */
+    private static String removeFromBucket(Object[] bucketArray, int index, String key) {
+        var bucket = bucketArray[index];
+        if (bucket instanceof TreeBucket) {
+            var tree = (TreeBucket) bucket;
+            var removedPair = tree.remove(key);
+            if (tree.size() <= UNTREEIFY_THRESHOLD) {
+                var list = new MyList();
+                for (var curPair : tree) {
+                    list.insertObject(curPair);
+                }
+                bucketArray[index] = list;
+            }
+            return removedPair != null ? removedPair.val : null;
+        }
+        if (bucket == null) {
+            return null;
+        }
+        for (Iterator<Object> it = ((MyList) bucket).iterator(); it.hasNext();) {
+            var lastPair = (StringPair)it.next();
+            if (lastPair.key.equals(key)){
+                it.remove();
+                return lastPair.val;
+            }
+        }
+        return null;
+    }
+
+    /** Returns pairs of a bucket of any kind.
+     * @param bucket a bucket or null for an empty one
+     * @return pairs which can be iterated as {@link Object}s */
+    private static Iterable<?> getPairs(Object bucket) {
+        if (bucket instanceof TreeBucket) {
+            return (TreeBucket) bucket;
+        }
+        return bucket != null ? (MyList) bucket : Collections.emptyList();
+    }
+
+    /** Counts pairs in a bucket of any kind. Pairs of a list bucket are counted one by one. */
+    private static int getChainLength(Object bucket) {
+        if (bucket instanceof TreeBucket) {
+            return ((TreeBucket) bucket).size();
+        }
+        int chainLength = 0;
+        for (Object ignored : getPairs(bucket)) {
+            chainLength++;
+        }
+        return chainLength;
+    }
+
+    /** Calculates hash code of key by the hash function of the table.
+     * @param key a non-null key
+     * @return hash code of the key
      * @throws IllegalArgumentException if key is null*/
-    private int getBucketIndex(String key) {
+    private int hash(String key) {
         if (key == null) {
             throw new IllegalArgumentException();
         }
+        return hashFunction.hash(key);
+    }
+
+    /** Calculates index in bucket array by masking lower bits of the hash code.
+     * @param hash hash code of a key
+     * @param bucketArray bucket array which length is a power of two
+     * @return number of bucket in which keys with that hash code are stored */
+    private static int getBucketIndex(int hash, Object[] bucketArray) {
+        return hash & (bucketArray.length - 1);
+    }
+
+    /** Returns the least power of two number of buckets which keeps the load factor of pairs
+     *  not greater than the maximum one.
+     * @throws IllegalArgumentException if the number of pairs is negative */
+    private static int getBucketsNumberFor(long pairsNumber, double maxLoadFactor) {
+        if (pairsNumber < 0) {
+            throw new IllegalArgumentException();
+        }
+        return roundUpToPowerOfTwo((int) Math.min(1 << 30, Math.ceil(pairsNumber / maxLoadFactor)));
+    }
+
+    private static int roundUpToPowerOfTwo(int number) {
+        return Math.max(1, Integer.highestOneBit(number * 2 - 1));
+    }
+
+    /** Inner class which represents a bucket with a lot of pairs. It maps keys to pairs. */
+    private static class TreeBucket implements Iterable<StringPair> {
+        /** Pairs of the bucket by their keys */
+        private final TreeMap<String, StringPair> pairs = new TreeMap<>();
+
+        private StringPair get(String key) {
+            return pairs.get(key);
+        }
+
+        private void put(StringPair pair) {
+            pairs.put(pair.key, pair);
+        }
+
+        private StringPair remove(String key) {
+            return pairs.remove(key);
+        }
+
+        private int size() {
+            return pairs.size();
+        }
 
-        int hashCode = key.hashCode() % bucketsNumber;
-        if (hashCode < 0) {
-            hashCode += bucketsNumber;
+        /** Returns an iterator over the pairs in the order of their keys. */
+        @Override
+        public Iterator<StringPair> iterator() {
+            return Collections.unmodifiableCollection(pairs.values()).iterator();
         }
-        return hashCode;
     }
 
     /** Inner class which represents pair of (key, mapped value). */
-    private class StringPair {
-        private StringPair(String keyStr, String valStr) {
+    private static class StringPair {
+        private StringPair(String keyStr, int keyHash, String valStr) {
             key = keyStr;
+            hash = keyHash;
             val = valStr;
         }
         private String key;
+        /** Hash code of the key, so that pairs are moved without hashing the keys again */
+        private int hash;
         private String val;
     }
 }
@@ -0,0 +1,309 @@
+package ru.hse.lyubortk.hashtable;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** A read-only hash table which is stored in a file written by {@link Hashtable#save} and
+ *  mapped to memory by {@link Hashtable#openMapped}. Lookups read the mapped pages directly,
+ *  so opening the table does not depend on its size, and processes which open the same file
+ *  share its pages in memory.
+ *  The file has the following format (all numbers are big-endian):
+ *  <ul>
+ *  <li>header: magic number, format version, number of pairs and number of slots
+ *  (a power of two), 4 bytes each;</li>
+ *  <li>index: for every slot the file offset of a record plus one (0 for an empty slot,
+ *  8 bytes), the hash code of its key (4 bytes) and 4 bytes of padding. A key is stored in
+ *  the first free slot starting from its home slot, which is chosen by the lower bits of
+ *  {@link String#hashCode} mixed with its higher bits;</li>
+ *  <li>records: the length of the key, the length of the value (4 bytes each) and then
+ *  the UTF-8 bytes of the key and of the value. A record never crosses a boundary of 1 GiB
+ *  regions of the file, so that every region can be mapped separately.</li>
+ *  </ul> */
+public class MappedHashtable {
+
+    private static final int MAGIC = 0x48534854;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int SLOT_SIZE = 16;
+
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** Size of separately mapped parts of the file */
+    private static final long REGION_SIZE = 1L << 30;
+
+    /** Number of pairs (key, mapped value) stored in the hash table */
+    private final int size;
+
+    /** Number of slots in the index */
+    private final int slotsNumber;
+
+    /** Mapped regions of the file */
+    private final MappedByteBuffer[] regions;
+
+
+    private MappedHashtable(int size, int slotsNumber, MappedByteBuffer[] regions) {
+        this.size = size;
+        this.slotsNumber = slotsNumber;
+        this.regions = regions;
+    }
+
+    /** Checks the header of the file and maps the file to memory.
+     * @param path path of a file written by {@link Hashtable#save}
+     * @return the hash table stored in the file
+     * @throws IOException if the file cannot be read or has wrong format */
+    static MappedHashtable open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            var header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // the header is read until it is full or the file ends
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a hash table file");
+            }
+            if (header.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException("Unsupported hash table file version");
+            }
+            int size = header.getInt(2 * Integer.BYTES);
+            int slotsNumber = header.getInt(3 * Integer.BYTES);
+            // at least one slot has to be empty, otherwise a lookup of a missing key never stops
+            if (size < 0 || Integer.bitCount(slotsNumber) != 1 || size >= slotsNumber
+                    || HEADER_SIZE + (long) slotsNumber * SLOT_SIZE > fileSize) {
+                throw new IOException("Corrupted hash table file");
+            }
+
+            int regionsNumber = (int) ((fileSize + REGION_SIZE - 1) / REGION_SIZE);
+            var regions = new MappedByteBuffer[regionsNumber];
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(REGION_SIZE, fileSize - start));
+            }
+            return new MappedHashtable(size, slotsNumber, regions);
+        }
+    }
+
+    /** Returns number of items (pairs of key and mapped value) stored in the hash table.
+     * @return number of stored elements */
+    public int size() {
+        return size;
+    }
+
+    /** Checks whether some value is stored by particular key
+     * @param key a non-null key to search for mapped value
+     * @return whether some value is mapped to the key
+     * @throws IllegalArgumentException if key is null or contains unpaired surrogates */
+    public boolean contains(String key) {
+        return findRecord(key) >= 0;
+    }
+
+    /** Returns value mapped to particular key or null if the key is not in the hash table
+     * @param key a non-null key to search for mapped value.
+     * @return mapped value or null
+     * @throws IllegalArgumentException if key is null or contains unpaired surrogates */
+    public String get(String key) {
+        long offset = findRecord(key);
+        if (offset < 0) {
+            return null;
+        }
+        var region = getRegion(offset);
+        int position = getPosition(offset);
+        int keyLength = region.getInt(position);
+        var valueBytes = new byte[region.getInt(position + Integer.BYTES)];
+        region.duplicate().position(position + RECORD_HEADER_SIZE + keyLength).get(valueBytes);
+        return new String(valueBytes, StandardCharsets.UTF_8);
+    }
+
+    /** Finds the record with key.
+     * @param key a non-null key to search for
+     * @return offset of the record in the file or -1 if there is none
+     * @throws IllegalArgumentException if key is null or contains unpaired surrogates */
+    private long findRecord(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+
+        byte[] keyBytes;
+        try {
+            keyBytes = encode(key);
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+        int hash = hash(key);
+        int mask = slotsNumber - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long slotOffset = HEADER_SIZE + (long) slot * SLOT_SIZE;
+            var region = getRegion(slotOffset);
+            int position = getPosition(slotOffset);
+            long recordOffset = region.getLong(position) - 1;
+            if (recordOffset < 0) {
+                return -1;
+            }
+            if (region.getInt(position + Long.BYTES) != hash) {
+                continue;
+            }
+            if (keyEquals(recordOffset, keyBytes)) {
+                return recordOffset;
+            }
+        }
+    }
+
+    private boolean keyEquals(long recordOffset, byte[] keyBytes) {
+        var region = getRegion(recordOffset);
+        int position = getPosition(recordOffset);
+        if (region.getInt(position) != keyBytes.length) {
+            return false;
+        }
+        int keyPosition = position + RECORD_HEADER_SIZE;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (region.get(keyPosition + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer getRegion(long offset) {
+        return regions[(int) (offset / REGION_SIZE)];
+    }
+
+    private static int getPosition(long offset) {
+        return (int) (offset % REGION_SIZE);
+    }
+
+    /** Calculates hash code of key. Higher bits of {@link String#hashCode} are mixed into lower
+     *  ones, because only lower bits choose the home slot. The function is a part of the file
+     *  format and must not be changed without changing the version. */
+    private static int hash(String key) {
+        int hashCode = key.hashCode();
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    /** Encodes key or value to UTF-8. Unlike {@link String#getBytes}, the encoder does not
+     *  replace unpaired surrogates by '?', so a string is never stored changed.
+     * @param string a non-null string
+     * @return bytes of the string
+     * @throws CharacterCodingException if string contains unpaired surrogates */
+    private static byte[] encode(String string) throws CharacterCodingException {
+        // a new encoder for every call, because lookups may be done concurrently
+        var buffer = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .encode(CharBuffer.wrap(string));
+        return Arrays.copyOf(buffer.array(), buffer.limit());
+    }
+
+    /** Writes a hash table file. Records are written one by one as pairs are added,
+     *  and the index is written when the writer is closed. */
+    static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final DataOutputStream output;
+        private final int size;
+        private final long[] recordOffsets;
+        private final int[] hashes;
+        private int pairsNumber = 0;
+        /** Offset in the file where the next record is written */
+        private long offset;
+
+        /** Creates or truncates the file and prepares to write pairs into it.
+         * @param path path of the file
+         * @param size exact number of pairs which are going to be added
+         * @throws IOException if the file cannot be written */
+        Writer(Path path, int size) throws IOException {
+            this.size = size;
+            // the load factor is not greater than 0.5
+            long slotsNumber = Long.highestOneBit(Math.max(1, size) * 4L - 1);
+            if (slotsNumber > 1 << 30) {
+                throw new IOException("Too many pairs");
+            }
+            recordOffsets = new long[(int) slotsNumber];
+            hashes = new int[(int) slotsNumber];
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            offset = HEADER_SIZE + slotsNumber * SLOT_SIZE;
+            channel.position(offset);
+            output = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel)));
+        }
+
+        /** Writes the record of a pair and adds it to the index. Keys have to be distinct.
+         * @throws IOException if the file cannot be written or the record is longer than
+         * a region
+         * @throws CharacterCodingException if key or value contains unpaired surrogates */
+        void add(String key, String value) throws IOException {
+            if (pairsNumber == size) {
+                throw new IllegalStateException();
+            }
+            byte[] keyBytes = encode(key);
+            byte[] valueBytes = encode(value);
+            long recordSize = RECORD_HEADER_SIZE + (long) keyBytes.length + valueBytes.length;
+            if (recordSize > REGION_SIZE) {
+                throw new IOException("Pair is too long");
+            }
+            if (offset / REGION_SIZE != (offset + recordSize - 1) / REGION_SIZE) {
+                long padding = REGION_SIZE - offset % REGION_SIZE;
+                for (long i = 0; i < padding; i++) {
+                    output.write(0);
+                }
+                offset += padding;
+            }
+
+            int hash = hash(key);
+            int mask = recordOffsets.length - 1;
+            int slot = hash & mask;
+            while (recordOffsets[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            recordOffsets[slot] = offset + 1;
+            hashes[slot] = hash;
+            pairsNumber++;
+
+            output.writeInt(keyBytes.length);
+            output.writeInt(valueBytes.length);
+            output.write(keyBytes);
+            output.write(valueBytes);
+            offset += recordSize;
+        }
+
+        /** Writes the header and the index and closes the file.
+         * @throws IOException if the file cannot be written */
+        @Override
+        public void close() throws IOException {
+            try (channel) {
+                output.flush();
+                if (pairsNumber != size) {
+                    throw new IllegalStateException();
+                }
+                channel.position(0);
+                var indexOutput = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel)));
+                indexOutput.writeInt(MAGIC);
+                indexOutput.writeInt(VERSION);
+                indexOutput.writeInt(size);
+                indexOutput.writeInt(recordOffsets.length);
+                for (int i = 0; i < recordOffsets.length; i++) {
+                    indexOutput.writeLong(recordOffsets[i]);
+                    indexOutput.writeInt(hashes[i]);
+                    indexOutput.writeInt(0);
+                }
+                indexOutput.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package ru.hse.lyubortk.hashtable;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A hash table which has the same interface as {@link Hashtable}, but keeps keys and values
+ *  outside of the Java heap. Every pair is encoded as a record of UTF-8 bytes in direct
+ *  {@link ByteBuffer} chunks: the length of the key, the length of the value, then the bytes
+ *  of the key and of the value. The index is an open addressing table with linear probing
+ *  which holds only addresses of records and hash codes of their keys in two primitive arrays.
+ *  So the garbage collector does not have to traverse stored pairs, however many there are.
+ *  Records are appended to the last chunk. A record of a removed or replaced pair stays in its
+ *  chunk until the table is compacted, which happens when such records take more space than
+ *  the records of stored pairs. {@link OffHeapHashtable#get} creates a new {@link String}
+ *  every time. Keys and values which cannot be encoded to UTF-8, i.e. which contain unpaired
+ *  surrogate chars, are rejected, because they would not be decoded back. */
+public class OffHeapHashtable {
+
+    /** Default number of slots */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Size of a chunk of records. Records which are longer get their own chunks. */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /** Size of the lengths of key and value in the beginning of a record */
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /** Chunks are not compacted while unused records take less space than that */
+    private static final long MIN_COMPACTED_SIZE = CHUNK_SIZE;
+
+    /** Number of pairs (key, mapped value) stored in the hash table */
+    private int size;
+
+    /** Addresses of records plus one, so that empty slots contain zero. An address is
+     *  the index of a chunk in the high half and the offset in the chunk in the low half.
+     *  Length is always a power of two. */
+    private long[] addresses;
+
+    /** Spread hash codes of the keys in the same slots */
+    private int[] hashes;
+
+    /** Chunks of records. Only the last one gets new records. */
+    private List<ByteBuffer> chunks;
+
+    /** Total size of records which are not referenced by the index */
+    private long unusedBytes;
+
+    /** Total size of records which are referenced by the index */
+    private long usedBytes;
+
+    /** Encoder which reports strings that cannot be encoded instead of replacing chars */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+
+    /** Default constructor which sets initial number of slots to 16. */
+    public OffHeapHashtable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** A constructor with initial number of slots as argument. The number is rounded up
+     *  to a power of two.
+     * @param capacity initial number of slots
+     * @throws IllegalArgumentException if capacity is not positive */
+    public OffHeapHashtable(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException();
+        }
+        allocateIndex(Math.max(2, Integer.highestOneBit(capacity * 2 - 1)));
+        chunks = new ArrayList<>();
+    }
+
+    /** Returns number of items (pairs of key and mapped value) stored in the hash table.
+     * @return number of stored elements */
+    public int size() {
+        return size;
+    }
+
+    /** Checks whether some value is stored by particular key
+     * @param key a non-null key to search for mapped value
+     * @return whether some value is mapped to the key
+     * @throws IllegalArgumentException if key is null or cannot be encoded to UTF-8 */
+    public boolean contains(String key) {
+        return addresses[findSlot(key, encode(key))] != 0;
+    }
+
+    /** Returns value mapped to particular key or null if the key is not in the hash table
+     * @param key a non-null key to search for mapped value.
+     * @return mapped value or null
+     * @throws IllegalArgumentException if key is null or cannot be encoded to UTF-8 */
+    public String get(String key) {
+        long address = addresses[findSlot(key, encode(key))];
+        return address != 0 ? readValue(address - 1) : null;
+    }
+
+    /** Maps value to key. Both arguments have to be non-null.
+     * @param key a non-null key to map value to
+     * @param value a non-null value to be mapped to key
+     * @return previous value stored by that key or null if there was none
+     * @exception IllegalArgumentException if any of arguments are null or cannot be encoded
+     * to UTF-8 */
+    public String put(String key, String value) {
+        byte[] keyBytes = encode(key);
+        // the value is encoded before the table is modified, so that a failure changes nothing
+        byte[] valueBytes = encode(value);
+        int slot = findSlot(key, keyBytes);
+        String prevValue = null;
+        if (addresses[slot] != 0) {
+            prevValue = readValue(addresses[slot] - 1);
+            releaseRecord(addresses[slot] - 1);
+        } else {
+            if ((size + 1) * 4 > addresses.length * 3) {
+                resize(addresses.length * 2);
+                slot = findSlot(key, keyBytes);
+            }
+            hashes[slot] = hash(key);
+            size++;
+        }
+        addresses[slot] = writeRecord(keyBytes, valueBytes) + 1;
+        compactIfNeeded();
+        return prevValue;
+    }
+
+    /** Removes pair of (key, mapped value) from hash table.
+     * @param key a non-null key to search mapped value
+     * @return a value that was mapped to this key or null if there was none
+     * @throws IllegalArgumentException if key is null or cannot be encoded to UTF-8 */
+    public String remove(String key) {
+        int slot = findSlot(key, encode(key));
+        if (addresses[slot] == 0) {
+            return null;
+        }
+
+        String foundValue = readValue(addresses[slot] - 1);
+        releaseRecord(addresses[slot] - 1);
+        deleteSlot(slot);
+        size--;
+        compactIfNeeded();
+        return foundValue;
+    }
+
+    /** Removes everything from hash table and sets number of slots to a default value.
+     *  Chunks are released when the garbage collector collects their buffers. */
+    public void clear() {
+        allocateIndex(DEFAULT_CAPACITY);
+        chunks = new ArrayList<>();
+        size = 0;
+        usedBytes = 0;
+        unusedBytes = 0;
+    }
+
+    /** Finds the slot which contains key or the empty slot where it has to be inserted.
+     * @param key a non-null key to search for
+     * @param keyBytes UTF-8 encoding of key
+     * @return index of the slot */
+    private int findSlot(String key, byte[] keyBytes) {
+        int hash = hash(key);
+        int mask = addresses.length - 1;
+        int slot = hash & mask;
+        while (addresses[slot] != 0
+                && (hashes[slot] != hash || !keyEquals(addresses[slot] - 1, keyBytes))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Empties the slot and moves back the following keys which cannot be found
+     *  after that otherwise, so no deleted markers are left in the index. */
+    private void deleteSlot(int slot) {
+        int mask = addresses.length - 1;
+        int nextSlot = slot;
+        while (true) {
+            nextSlot = (nextSlot + 1) & mask;
+            if (addresses[nextSlot] == 0) {
+                break;
+            }
+            int homeSlot = hashes[nextSlot] & mask;
+            // the key in nextSlot may be moved if its home slot is not between slot and nextSlot
+            if (((nextSlot - homeSlot) & mask) >= ((nextSlot - slot) & mask)) {
+                addresses[slot] = addresses[nextSlot];
+                hashes[slot] = hashes[nextSlot];
+                slot = nextSlot;
+            }
+        }
+        addresses[slot] = 0;
+    }
+
+    /** Reallocates the index and inserts all addresses into the new one.
+     * @param capacity new number of slots, a power of two */
+    private void resize(int capacity) {
+        long[] oldAddresses = addresses;
+        int[] oldHashes = hashes;
+        allocateIndex(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] != 0) {
+                int slot = oldHashes[i] & mask;
+                while (addresses[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                addresses[slot] = oldAddresses[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        addresses = new long[capacity];
+        hashes = new int[capacity];
+    }
+
+    /** Copies records of stored pairs to new chunks if unused records take more space than
+     *  them, so that the old chunks can be released. */
+    private void compactIfNeeded() {
+        if (unusedBytes < MIN_COMPACTED_SIZE || unusedBytes < usedBytes) {
+            return;
+        }
+        var oldChunks = chunks;
+        chunks = new ArrayList<>();
+        usedBytes = 0;
+        unusedBytes = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            if (addresses[i] != 0) {
+                addresses[i] = copyRecord(oldChunks, addresses[i] - 1) + 1;
+            }
+        }
+    }
+
+    /** Appends a new record to the last chunk.
+     * @return address of the record */
+    private long writeRecord(byte[] keyBytes, byte[] valueBytes) {
+        int recordSize = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        var chunk = getChunkFor(recordSize);
+        int offset = chunk.position();
+        chunk.putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes);
+        usedBytes += recordSize;
+        return ((long) (chunks.size() - 1) << 32) | offset;
+    }
+
+    /** Copies the record from other chunks to the last chunk.
+     * @return new address of the record */
+    private long copyRecord(List<ByteBuffer> oldChunks, long address) {
+        var oldChunk = oldChunks.get(getChunkIndex(address));
+        int offset = getOffset(address);
+        int recordSize = getRecordSize(oldChunk, offset);
+        var chunk = getChunkFor(recordSize);
+        int newOffset = chunk.position();
+        chunk.put(oldChunk.duplicate().limit(offset + recordSize).position(offset));
+        usedBytes += recordSize;
+        return ((long) (chunks.size() - 1) << 32) | newOffset;
+    }
+
+    /** Returns the last chunk if it has enough free space or allocates a new one. */
+    private ByteBuffer getChunkFor(int recordSize) {
+        if (!chunks.isEmpty() && chunks.get(chunks.size() - 1).remaining() >= recordSize) {
+            return chunks.get(chunks.size() - 1);
+        }
+        var chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, recordSize));
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    /** Marks the record as unused. */
+    private void releaseRecord(long address) {
+        int recordSize = getRecordSize(chunks.get(getChunkIndex(address)), getOffset(address));
+        usedBytes -= recordSize;
+        unusedBytes += recordSize;
+    }
+
+    private boolean keyEquals(long address, byte[] keyBytes) {
+        var chunk = chunks.get(getChunkIndex(address));
+        int offset = getOffset(address);
+        if (chunk.getInt(offset) != keyBytes.length) {
+            return false;
+        }
+        int keyOffset = offset + RECORD_HEADER_SIZE;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (chunk.get(keyOffset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readValue(long address) {
+        var chunk = chunks.get(getChunkIndex(address));
+        int offset = getOffset(address);
+        int keyLength = chunk.getInt(offset);
+        var valueBytes = new byte[chunk.getInt(offset + Integer.BYTES)];
+        chunk.duplicate().position(offset + RECORD_HEADER_SIZE + keyLength).get(valueBytes);
+        return new String(valueBytes, StandardCharsets.UTF_8);
+    }
+
+    private static int getRecordSize(ByteBuffer chunk, int offset) {
+        return RECORD_HEADER_SIZE + chunk.getInt(offset) + chunk.getInt(offset + Integer.BYTES);
+    }
+
+    private static int getChunkIndex(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int getOffset(long address) {
+        return (int) address;
+    }
+
+    /** Encodes key or value to UTF-8.
+     * @param string a non-null string
+     * @return bytes of the string
+     * @throws IllegalArgumentException if string is null or contains unpaired surrogates */
+    private byte[] encode(String string) {
+        if (string == null) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            var buffer = encoder.encode(CharBuffer.wrap(string));
+            return Arrays.copyOf(buffer.array(), buffer.limit());
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /** Calculates hash code of a non-null key by {@link HashFunction#DEFAULT}. */
+    private static int hash(String key) {
+        return HashFunction.DEFAULT.hash(key);
+    }
+}
@@ -0,0 +1,214 @@
+package ru.hse.lyubortk.hashtable;
+
+/** A hash table which has the same interface as {@link Hashtable}, but stores keys
+ *  and values in flat arrays instead of lists of pairs. Hash table implements open
+ *  addressing with linear probing and Robin Hood displacement: a key which is further from
+ *  its home slot takes the slot of a key which is closer to its own one. So all keys stay
+ *  close to their home slots, and a lookup of a missing key stops as soon as it meets a key
+ *  which is closer to its home slot than the searched one would be.
+ *  Hash codes of keys are cached, so keys are compared with {@link String#equals} only when
+ *  their hash codes are equal. */
+public class OpenAddressingHashtable {
+
+    /** Default number of slots */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Number of pairs (key, mapped value) stored in the hash table */
+    private int size;
+
+    /** Keys of stored pairs. Empty slots contain null. Length is always a power of two. */
+    private String[] keys;
+
+    /** Values mapped to the keys in the same slots */
+    private String[] values;
+
+    /** Spread hash codes of the keys in the same slots */
+    private int[] hashes;
+
+
+    /** Default constructor which sets initial number of slots to 16. */
+    public OpenAddressingHashtable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** A constructor with initial number of slots as argument. The number is rounded up
+     *  to a power of two.
+     * @param capacity initial number of slots
+     * @throws IllegalArgumentException if capacity is not positive */
+    public OpenAddressingHashtable(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException();
+        }
+        allocate(Math.max(2, Integer.highestOneBit(capacity * 2 - 1)));
+    }
+
+    /** Returns number of items (pairs of key and mapped value) stored in the hash table.
+     * @return number of stored elements */
+    public int size() {
+        return size;
+    }
+
+    /** Checks whether some value is stored by particular key
+     * @param key a non-null key to search for mapped value
+     * @return whether some value is mapped to the key
+     * @throws IllegalArgumentException if key is null */
+    public boolean contains(String key) {
+        return findSlot(key) >= 0;
+    }
+
+    /** Returns value mapped to particular key or null if the key is not in the hash table
+     * @param key a non-null key to search for mapped value.
+     * @return mapped value or null
+     * @throws IllegalArgumentException if key is null */
+    public String get(String key) {
+        int slot = findSlot(key);
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    /** Maps value to key. Both arguments have to be non-null.
+     * @param key a non-null key to map value to
+     * @param value a non-null value to be mapped to key
+     * @return previous value stored by that key or null if there was none
+     * @exception IllegalArgumentException if any of arguments are null */
+    public String put(String key, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            String prevValue = values[slot];
+            values[slot] = value;
+            return prevValue;
+        }
+
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        insert(key, value, hash(key));
+        size++;
+        return null;
+    }
+
+    /** Removes pair of (key, mapped value) from hash table. The following keys
+     *  which are not in their home slots are shifted back by one slot, so no deleted
+     *  markers are left in the table.
+     * @param key a non-null key to search mapped value
+     * @return a value that was mapped to this key or null if there was none
+     * @throws IllegalArgumentException if key is null */
+    public String remove(String key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        String foundValue = values[slot];
+        int mask = keys.length - 1;
+        int nextSlot = (slot + 1) & mask;
+        while (keys[nextSlot] != null && getProbeDistance(nextSlot) > 0) {
+            keys[slot] = keys[nextSlot];
+            values[slot] = values[nextSlot];
+            hashes[slot] = hashes[nextSlot];
+            slot = nextSlot;
+            nextSlot = (slot + 1) & mask;
+        }
+        keys[slot] = null;
+        values[slot] = null;
+        size--;
+        return foundValue;
+    }
+
+    /** Removes everything from hash table and sets number of slots to a default value.
+     *  In other words, method makes the hash table identical to one constructed
+     *  by default constructor */
+    public void clear() {
+        allocate(DEFAULT_CAPACITY);
+        size = 0;
+    }
+
+    /** Finds the slot which contains key.
+     * @param key a non-null key to search for
+     * @return index of the slot or -1 if the key is not in the hash table
+     * @throws IllegalArgumentException if key is null */
+    private int findSlot(String key) {
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        for (int distance = 0; ; distance++) {
+            String slotKey = keys[slot];
+            if (slotKey == null || getProbeDistance(slot) < distance) {
+                return -1;
+            }
+            if (hashes[slot] == hash && slotKey.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Inserts pair which is not in the hash table yet. Pairs which are closer to their home
+     *  slots than the inserted one are moved further. There has to be at least one empty slot.
+     * @param key a key which is not in the hash table
+     * @param value a value to be mapped to key
+     * @param hash spread hash code of key */
+    private void insert(String key, String value, int hash) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        for (int distance = 0; keys[slot] != null; distance++) {
+            int slotDistance = getProbeDistance(slot);
+            if (slotDistance < distance) {
+                String slotKey = keys[slot];
+                String slotValue = values[slot];
+                int slotHash = hashes[slot];
+                keys[slot] = key;
+                values[slot] = value;
+                hashes[slot] = hash;
+                key = slotKey;
+                value = slotValue;
+                hash = slotHash;
+                distance = slotDistance;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+    }
+
+    /** Reallocates arrays and inserts all stored pairs into the new ones.
+     * @param capacity new number of slots, a power of two */
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i], oldHashes[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        values = new String[capacity];
+        hashes = new int[capacity];
+    }
+
+    /** Returns the distance from the home slot of the key in slot to the slot itself.
+     * @param slot index of a non-empty slot */
+    private int getProbeDistance(int slot) {
+        return (slot - hashes[slot]) & (keys.length - 1);
+    }
+
+    /** Calculates hash code of key by {@link HashFunction#DEFAULT}.
+     * @param key a non-null key
+     * @return spread hash code
+     * @throws IllegalArgumentException if key is null */
+    private static int hash(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        return HashFunction.DEFAULT.hash(key);
+    }
+}
@@ -0,0 +1,161 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentHashtableTest {
+
+    private static final int NUMBER_OF_THREADS = 8;
+
+    private ConcurrentHashtable table;
+
+    @BeforeEach
+    void initializeHashtable() {
+        table = new ConcurrentHashtable();
+    }
+
+    @Test
+    void putGetRemove() {
+        assertNull(table.put("a", "b"));
+        assertEquals("b", table.put("a", "c"));
+        assertEquals("c", table.get("a"));
+        assertTrue(table.contains("a"));
+        assertEquals(1, table.size());
+        assertEquals("c", table.remove("a"));
+        assertNull(table.remove("a"));
+        assertFalse(table.contains("a"));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void putWithHashCollisions() {
+        assertNull(table.put("Siblings", "a"));
+        assertNull(table.put("Teheran", "b"));
+        assertEquals("a", table.remove("Siblings"));
+        assertEquals("b", table.get("Teheran"));
+    }
+
+    @Test
+    void nullArguments() {
+        assertThrows(IllegalArgumentException.class, () -> table.get(null));
+        assertThrows(IllegalArgumentException.class, () -> table.contains(null));
+        assertThrows(IllegalArgumentException.class, () -> table.put(null, "a"));
+        assertThrows(IllegalArgumentException.class, () -> table.put("a", null));
+        assertThrows(IllegalArgumentException.class, () -> table.remove(null));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentHashtable(0));
+    }
+
+    @Test
+    void clear() {
+        for (int i = 0; i < 1000; i++) {
+            table.put(Integer.toString(i), "a");
+        }
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get("0"));
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        for (var currentTable : new ConcurrentHashtable[] {table, new ConcurrentHashtable(1)}) {
+            var random = new Random(42);
+            var expected = new HashMap<String, String>();
+            for (int i = 0; i < 100_000; i++) {
+                var key = Integer.toString(random.nextInt(20_000));
+                var value = Integer.toString(i);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        assertEquals(expected.put(key, value), currentTable.put(key, value));
+                        break;
+                    case 1:
+                        assertEquals(expected.remove(key), currentTable.remove(key));
+                        break;
+                    default:
+                        assertEquals(expected.get(key), currentTable.get(key));
+                }
+                assertEquals(expected.size(), currentTable.size());
+            }
+        }
+    }
+
+    @Test
+    void concurrentPutsAndRemoves() throws InterruptedException {
+        final int keysPerThread = 20_000;
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+            int threadIndex = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                for (int i = 0; i < keysPerThread; i++) {
+                    table.put(threadIndex + "-" + i, Integer.toString(i));
+                }
+                // removes every odd key of this thread
+                for (int i = 1; i < keysPerThread; i += 2) {
+                    table.remove(threadIndex + "-" + i);
+                }
+            }));
+        }
+        for (var thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(NUMBER_OF_THREADS * keysPerThread / 2, table.size());
+        for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+            for (int i = 0; i < keysPerThread; i++) {
+                assertEquals(i % 2 == 0 ? Integer.toString(i) : null, table.get(t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    void readersSeeStableKeysWhileTableGrows() throws InterruptedException {
+        final int stableKeys = 1000;
+        for (int i = 0; i < stableKeys; i++) {
+            table.put("stable-" + i, Integer.toString(i));
+        }
+        var isFinished = new AtomicBoolean(false);
+        var isFailed = new AtomicBoolean(false);
+        var readers = new ArrayList<Thread>();
+        for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+            readers.add(new Thread(() -> {
+                while (!isFinished.get()) {
+                    for (int i = 0; i < stableKeys; i++) {
+                        if (!Integer.toString(i).equals(table.get("stable-" + i))) {
+                            isFailed.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        for (var reader : readers) {
+            reader.start();
+        }
+        for (int i = 0; i < 200_000; i++) {
+            table.put(Integer.toString(i), "a");
+            if (i % 3 == 0) {
+                table.remove(Integer.toString(i / 2));
+            }
+        }
+        isFinished.set(true);
+        for (var reader : readers) {
+            reader.join();
+        }
+        assertFalse(isFailed.get());
+    }
+}
@@ -3,6 +3,13 @@ package ru.hse.lyubortk.hashtable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class HashtableTest {
@@ -126,9 +133,416 @@ class HashtableTest {
         assertEquals(0, table.size());
     }
 
+    @Test
+    void getWhileGrowing() {
+        for (int i = 0; i < 100_000; i++) {
+            table.put(Integer.toString(i), Integer.toString(i + 1));
+            // the oldest keys are in buckets which are moved last
+            assertEquals("1", table.get("0"));
+            assertEquals(Integer.toString(i / 2 + 1), table.get(Integer.toString(i / 2)));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(Integer.toString(i + 1), table.remove(Integer.toString(i)));
+            assertFalse(table.contains(Integer.toString(i)));
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        var random = new Random(42);
+        var expected = new HashMap<String, String>();
+        for (int i = 0; i < 100_000; i++) {
+            var key = Integer.toString(random.nextInt(20_000));
+            var value = Integer.toString(i);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, value), table.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), table.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), table.get(key));
+            }
+            assertEquals(expected.size(), table.size());
+        }
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void shrinkAfterRemove() {
+        putThousandIntegers();
+        int grownBucketsNumber = table.getBucketsNumber();
+        for (int i = 0; i < 1000; i++) {
+            table.remove(Integer.toString(i));
+        }
+        assertEquals(16, table.getBucketsNumber());
+        assertTrue(grownBucketsNumber > 16);
+    }
+
+    @Test
+    void noThrashingNearThreshold() {
+        table = new Hashtable(4, 0.5, 0.125);
+        // the table grows from 128 to 256 buckets on the last put
+        for (int i = 0; i < 65; i++) {
+            table.put(Integer.toString(i), "a");
+        }
+        int bucketsNumber = table.getBucketsNumber();
+        assertEquals(256, bucketsNumber);
+        // size goes back and forth over the maximum load of the previous number of buckets
+        for (int i = 0; i < 100; i++) {
+            table.remove("0");
+            table.put("0", "a");
+            table.remove("1");
+            table.put("1", "a");
+        }
+        assertEquals(bucketsNumber, table.getBucketsNumber());
+    }
+
+    @Test
+    void trimToSize() {
+        putThousandIntegers();
+        for (int i = 0; i < 990; i++) {
+            table.remove(Integer.toString(i));
+        }
+        table.trimToSize();
+        assertEquals(32, table.getBucketsNumber());
+        for (int i = 990; i < 1000; i++) {
+            assertEquals(Integer.toString(i + 1000), table.get(Integer.toString(i)));
+        }
+
+        table.clear();
+        table.trimToSize();
+        assertEquals(1, table.getBucketsNumber());
+        assertNull(table.put("a", "b"));
+        assertEquals("b", table.get("a"));
+    }
+
+    @Test
+    void withoutShrinking() {
+        table = new Hashtable(16, 2, 0);
+        putThousandIntegers();
+        assertEquals(512, table.getBucketsNumber());
+        for (int i = 0; i < 1000; i++) {
+            table.remove(Integer.toString(i));
+        }
+        assertEquals(512, table.getBucketsNumber());
+    }
+
+    @Test
+    void invalidLoadFactors() {
+        assertThrows(IllegalArgumentException.class, () -> new Hashtable(0));
+        assertThrows(IllegalArgumentException.class, () -> new Hashtable(16, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Hashtable(16, 0.5, 0.25));
+        assertThrows(IllegalArgumentException.class, () -> new Hashtable(16, 0.5, -1));
+    }
+
+    @Test
+    void putIfAbsent() {
+        assertNull(table.putIfAbsent("a", "b"));
+        assertEquals("b", table.putIfAbsent("a", "c"));
+        assertEquals("b", table.get("a"));
+        assertEquals(1, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.putIfAbsent("a", null));
+    }
+
+    @Test
+    void computeIfAbsent() {
+        assertEquals("a!", table.computeIfAbsent("a", key -> key + "!"));
+        assertEquals("a!", table.computeIfAbsent("a", key -> {
+            throw new AssertionError();
+        }));
+        assertNull(table.computeIfAbsent("b", key -> null));
+        assertFalse(table.contains("b"));
+        assertEquals(1, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.computeIfAbsent("a", null));
+    }
+
+    @Test
+    void merge() {
+        for (int i = 0; i < 1000; i++) {
+            table.merge(Integer.toString(i % 10), "1",
+                    (a, b) -> Integer.toString(Integer.parseInt(a) + Integer.parseInt(b)));
+        }
+        assertEquals(10, table.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("100", table.get(Integer.toString(i)));
+        }
+        assertNull(table.merge("0", "1", (a, b) -> null));
+        assertFalse(table.contains("0"));
+        assertEquals(9, table.size());
+        assertThrows(IllegalArgumentException.class, () -> table.merge("a", null, (a, b) -> a));
+        assertThrows(IllegalArgumentException.class, () -> table.merge("a", "b", null));
+    }
+
     private void putThousandIntegers() {
         for (int i = 0; i < 1000; ++i) {
             table.put(Integer.toString(i),Integer.toString(i + 1000));
         }
     }
+
+    @Test
+    void bucketsNumberIsPowerOfTwo() {
+        assertEquals(8, new Hashtable(5).getBucketsNumber());
+        assertEquals(16, new Hashtable(16).getBucketsNumber());
+        assertEquals(1, new Hashtable(1).getBucketsNumber());
+    }
+
+    @Test
+    void constantHashFunction() {
+        table = new Hashtable(16, 0.5, 0.125, key -> 42);
+        putThousandIntegers();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i + 1000), table.get(Integer.toString(i)));
+        }
+        int[] histogram = table.getChainLengthHistogram();
+        assertEquals(1001, histogram.length);
+        assertEquals(1, histogram[1000]);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.toString(i + 1000), table.remove(Integer.toString(i)));
+        }
+        assertEquals(500, table.size());
+        assertNull(table.get("0"));
+    }
+
+    @Test
+    void sipHashFunction() {
+        table = new Hashtable(16, 0.5, 0.125, new SipHashFunction());
+        putThousandIntegers();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i + 1000), table.get(Integer.toString(i)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> table.get(null));
+    }
+
+    @Test
+    void chainLengthHistogram() {
+        assertArrayEquals(new int[] {16}, table.getChainLengthHistogram());
+        putThousandIntegers();
+        // pairs are moved to the new bucket array, so every bucket is counted once
+        table.trimToSize();
+        int[] histogram = table.getChainLengthHistogram();
+        int buckets = 0;
+        int pairs = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            buckets += histogram[i];
+            pairs += i * histogram[i];
+        }
+        assertEquals(table.getBucketsNumber(), buckets);
+        assertEquals(1000, pairs);
+        assertTrue(histogram[histogram.length - 1] > 0);
+    }
+
+    @Test
+    void nullHashFunction() {
+        assertThrows(IllegalArgumentException.class, () -> new Hashtable(16, 0.5, 0.125, null));
+    }
+
+    @Test
+    void treeifiedBucket() {
+        table = new Hashtable(16, 0.5, 0.125, key -> 42);
+        for (int i = 0; i < 100; i++) {
+            assertNull(table.put(Integer.toString(i), "a"));
+        }
+        assertEquals(1, table.getChainLengthHistogram()[100]);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a", table.put(Integer.toString(i), Integer.toString(i)));
+        }
+        assertEquals(100, table.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), table.get(Integer.toString(i)));
+        }
+        assertFalse(table.contains("100"));
+        assertNull(table.remove("100"));
+    }
+
+    @Test
+    void untreeifiedBucket() {
+        table = new Hashtable(16, 0.5, 0.125, key -> 0);
+        for (int i = 0; i < 20; i++) {
+            table.put(Integer.toString(i), Integer.toString(i));
+        }
+        // the bucket becomes a list again, and a tree again after that
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 18; i++) {
+                assertEquals(Integer.toString(i), table.remove(Integer.toString(i)));
+            }
+            assertEquals(2, table.size());
+            assertEquals("18", table.get("18"));
+            assertEquals("19", table.get("19"));
+            for (int i = 0; i < 18; i++) {
+                assertNull(table.put(Integer.toString(i), Integer.toString(i)));
+            }
+            assertEquals(20, table.size());
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.toString(i), table.remove(Integer.toString(i)));
+        }
+        assertEquals(0, table.size());
+        assertArrayEquals(new int[] {table.getBucketsNumber()}, table.getChainLengthHistogram());
+    }
+
+    @Test
+    void treeifiedBucketsAreRehashed() {
+        // keys with the same lower bits fall into the same bucket until the table grows
+        table = new Hashtable(1, 0.5, 0.125, key -> Integer.parseInt(key) << 8);
+        for (int i = 0; i < 1000; i++) {
+            table.put(Integer.toString(i), Integer.toString(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i), table.get(Integer.toString(i)));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals(Integer.toString(i), table.remove(Integer.toString(i)));
+        }
+        table.trimToSize();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.toString(i), table.get(Integer.toString(i)));
+        }
+        int pairs = 0;
+        int[] histogram = table.getChainLengthHistogram();
+        for (int i = 0; i < histogram.length; i++) {
+            pairs += i * histogram[i];
+        }
+        assertEquals(500, pairs);
+    }
+
+    @Test
+    void putAll() {
+        putThousandIntegers();
+        var other = new Hashtable();
+        for (int i = 500; i < 1500; i++) {
+            other.put(Integer.toString(i), "b");
+        }
+        table.putAll(other);
+        assertEquals(1500, table.size());
+        for (int i = 0; i < 1500; i++) {
+            assertEquals(i < 500 ? Integer.toString(i + 1000) : "b",
+                    table.get(Integer.toString(i)));
+        }
+        assertEquals(1000, other.size());
+        assertThrows(IllegalArgumentException.class, () -> table.putAll(null));
+    }
+
+    @Test
+    void putAllWithOtherHashFunction() {
+        putThousandIntegers();
+        var other = new Hashtable(16, 0.5, 0.125, new SipHashFunction());
+        other.putAll(table);
+        other.putAll(other);
+        assertEquals(1000, other.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i + 1000), other.get(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    void bulkLoadFromIterator() {
+        var pairs = new ArrayList<Map.Entry<String, String>>();
+        for (int i = 0; i < 1000; i++) {
+            pairs.add(Map.entry(Integer.toString(i), "a"));
+        }
+        pairs.add(Map.entry("0", "b"));
+        table = Hashtable.bulkLoad(pairs.iterator(), 1000);
+        assertEquals(1000, table.size());
+        assertEquals(2048, table.getBucketsNumber());
+        assertEquals("b", table.get("0"));
+        for (int i = 1; i < 1000; i++) {
+            assertEquals("a", table.get(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    void bulkLoadFromParallelStream() {
+        var pairs = new ArrayList<Map.Entry<String, String>>();
+        for (int i = 0; i < 100_000; i++) {
+            pairs.add(Map.entry(Integer.toString(i % 50_000), Integer.toString(i)));
+        }
+        table = Hashtable.bulkLoad(pairs.parallelStream(), 50_000);
+        assertEquals(50_000, table.size());
+        assertEquals(131_072, table.getBucketsNumber());
+        for (int i = 0; i < 50_000; i++) {
+            // the last value in the encounter order wins
+            assertEquals(Integer.toString(i + 50_000), table.get(Integer.toString(i)));
+        }
+        assertNull(table.put("50000", "a"));
+        assertEquals("a", table.remove("50000"));
+        assertEquals(50_000, table.size());
+    }
+
+    @Test
+    void bulkLoadWithTooSmallExpectedSize() {
+        table = Hashtable.bulkLoad(IntStream.range(0, 1000).parallel()
+                .mapToObj(i -> Map.entry(Integer.toString(i), "a")), 10);
+        assertEquals(1000, table.size());
+        assertEquals(2048, table.getBucketsNumber());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("a", table.get(Integer.toString(i)));
+        }
+
+        table = Hashtable.bulkLoad(IntStream.range(0, 1000)
+                .mapToObj(i -> Map.entry(Integer.toString(i), "a")), 0);
+        assertEquals(1000, table.size());
+    }
+
+    @Test
+    void bulkLoadInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Hashtable.bulkLoad((Stream<Map.Entry<String, String>>) null, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> Hashtable.bulkLoad(Stream.<Map.Entry<String, String>>empty(), -1));
+        var withNullValue = new HashMap<String, String>();
+        withNullValue.put("a", null);
+        assertThrows(IllegalArgumentException.class,
+                () -> Hashtable.bulkLoad(withNullValue.entrySet().iterator(), 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> Hashtable.bulkLoad(withNullValue.entrySet().parallelStream(), 1));
+    }
+
+    @Test
+    void computeIfAbsentModifyingTable() {
+        assertEquals("b", table.computeIfAbsent("a", key -> {
+            table.put(key, "b");
+            return "c";
+        }));
+        assertEquals(1, table.size());
+        assertEquals("b", table.get("a"));
+
+        // a function which grows the table
+        assertEquals("x", table.computeIfAbsent("x", key -> {
+            putThousandIntegers();
+            return "x";
+        }));
+        assertEquals(1002, table.size());
+        assertEquals("x", table.get("x"));
+    }
+
+    @Test
+    void mergeModifyingTable() {
+        table.put("a", "1");
+        assertEquals("12", table.merge("a", "2", (a, b) -> {
+            table.remove("a");
+            return a + b;
+        }));
+        assertEquals(1, table.size());
+        assertEquals("12", table.get("a"));
+
+        assertNull(table.merge("a", "3", (a, b) -> {
+            table.remove("a");
+            return null;
+        }));
+        assertEquals(0, table.size());
+
+        table.put("a", "1");
+        assertEquals("12", table.merge("a", "2", (a, b) -> {
+            table.remove("a");
+            table.put("a", "5");
+            return a + b;
+        }));
+        assertEquals(1, table.size());
+        assertEquals("12", table.get("a"));
+    }
 }
\ No newline at end of file
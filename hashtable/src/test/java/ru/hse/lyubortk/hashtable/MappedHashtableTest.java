@@ -0,0 +1,123 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedHashtableTest {
+
+    private Path file;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        file = Files.createTempFile("hashtable", ".bin");
+    }
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void saveAndOpen() throws IOException {
+        var table = new Hashtable();
+        for (int i = 0; i < 10_000; i++) {
+            table.put(Integer.toString(i), Integer.toString(i + 1000));
+        }
+        table.put("Siblings", "a");
+        table.put("Teheran", "b");
+        table.put("\u043a\u043b\u044e\u0447", "\ud83d\ude00");
+        table.save(file);
+
+        var mappedTable = Hashtable.openMapped(file);
+        assertEquals(table.size(), mappedTable.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(Integer.toString(i + 1000), mappedTable.get(Integer.toString(i)));
+        }
+        assertEquals("a", mappedTable.get("Siblings"));
+        assertEquals("b", mappedTable.get("Teheran"));
+        assertEquals("\ud83d\ude00", mappedTable.get("\u043a\u043b\u044e\u0447"));
+        assertTrue(mappedTable.contains("0"));
+        assertFalse(mappedTable.contains("a"));
+        assertNull(mappedTable.get("10000"));
+        assertThrows(IllegalArgumentException.class, () -> mappedTable.get(null));
+    }
+
+    @Test
+    void saveWhileRehashing() throws IOException {
+        var table = new Hashtable();
+        // the table has just grown, so most pairs are still in the old bucket array
+        for (int i = 0; i < 513; i++) {
+            table.put(Integer.toString(i), "a");
+        }
+        table.save(file);
+        var mappedTable = Hashtable.openMapped(file);
+        for (int i = 0; i < 513; i++) {
+            assertEquals("a", mappedTable.get(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    void emptyTable() throws IOException {
+        new Hashtable().save(file);
+        var mappedTable = Hashtable.openMapped(file);
+        assertEquals(0, mappedTable.size());
+        assertNull(mappedTable.get("a"));
+    }
+
+    @Test
+    void unpairedSurrogates() throws IOException {
+        // unpaired surrogates cannot be stored, and they must not be replaced by '?'
+        for (var pair : new String[][] {{"\ud83d", "a"}, {"a", "b\ude00"}}) {
+            var table = new Hashtable();
+            table.put(pair[0], pair[1]);
+            assertThrows(CharacterCodingException.class, () -> table.save(file));
+        }
+
+        var table = new Hashtable();
+        table.put("?", "a");
+        table.save(file);
+        var mappedTable = Hashtable.openMapped(file);
+        assertEquals("a", mappedTable.get("?"));
+        assertThrows(IllegalArgumentException.class, () -> mappedTable.get("\ud83d"));
+        assertThrows(IllegalArgumentException.class, () -> mappedTable.contains("\ude00"));
+    }
+
+    @Test
+    void wrongFormat() throws IOException {
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        assertThrows(IOException.class, () -> Hashtable.openMapped(file));
+        Files.write(file, new byte[0]);
+        assertThrows(IOException.class, () -> Hashtable.openMapped(file));
+
+        // a header which declares 1 << 20 slots without the index
+        var header = ByteBuffer.allocate(16).putInt(0x48534854).putInt(1).putInt(1).putInt(1 << 20);
+        Files.write(file, header.array());
+        assertThrows(IOException.class, () -> Hashtable.openMapped(file));
+
+        // a full index without empty slots
+        var fullIndex = ByteBuffer.allocate(16 + 2 * 16)
+                .putInt(0x48534854).putInt(1).putInt(2).putInt(2);
+        Files.write(file, fullIndex.array());
+        assertThrows(IOException.class, () -> Hashtable.openMapped(file));
+
+        // a truncated file written by save
+        var table = new Hashtable();
+        for (int i = 0; i < 1000; i++) {
+            table.put(Integer.toString(i), "a");
+        }
+        table.save(file);
+        var bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, 1000));
+        assertThrows(IOException.class, () -> Hashtable.openMapped(file));
+    }
+}
@@ -0,0 +1,132 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapHashtableTest {
+
+    private OffHeapHashtable table;
+
+    @BeforeEach
+    void initializeHashtable() {
+        table = new OffHeapHashtable();
+    }
+
+    @Test
+    void sizeAfterPutAndRemove() {
+        putThousandIntegers();
+        putThousandIntegers();
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1000 - i, table.size());
+            table.remove(Integer.toString(i));
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void getAndContains() {
+        putThousandIntegers();
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(Integer.toString(i + 1000), table.get(Integer.toString(i)));
+            assertTrue(table.contains(Integer.toString(i)));
+        }
+        assertNull(table.get("a"));
+        assertFalse(table.contains("a"));
+    }
+
+    @Test
+    void putWithHashCollisions() {
+        assertNull(table.put("Siblings", "a"));
+        assertNull(table.put("Teheran", "b"));
+        assertEquals("a", table.put("Siblings", "c"));
+        assertEquals("c", table.remove("Siblings"));
+        assertEquals("b", table.get("Teheran"));
+    }
+
+    @Test
+    void nonAsciiStrings() {
+        var cyrillic = "\u043a\u043b\u044e\u0447";
+        var emoji = "\ud83d\ude00";
+        assertNull(table.put(cyrillic, emoji));
+        assertNull(table.put("", cyrillic));
+        assertNull(table.put(emoji, ""));
+        assertEquals(emoji, table.get(cyrillic));
+        assertEquals(cyrillic, table.get(""));
+        assertEquals("", table.get(emoji));
+
+        // unpaired surrogates cannot be stored, and they must not be replaced by '?'
+        assertThrows(IllegalArgumentException.class, () -> table.put("\ud83d", "a"));
+        assertThrows(IllegalArgumentException.class, () -> table.put("a\ude00", "a"));
+        assertThrows(IllegalArgumentException.class, () -> table.put("a", "\ude00\ud83d"));
+        assertThrows(IllegalArgumentException.class, () -> table.get("\ud83d"));
+        assertThrows(IllegalArgumentException.class, () -> table.remove("\ud83d"));
+        assertNull(table.put("?", "a"));
+        assertEquals(4, table.size());
+        assertFalse(table.contains("a"));
+    }
+
+    @Test
+    void valuesLongerThanChunk() {
+        var longValue = "a".repeat(3 << 20);
+        assertNull(table.put("long", longValue));
+        assertNull(table.put("short", "b"));
+        assertEquals(longValue, table.get("long"));
+        assertEquals("b", table.get("short"));
+    }
+
+    @Test
+    void nullArguments() {
+        assertThrows(IllegalArgumentException.class, () -> table.get(null));
+        assertThrows(IllegalArgumentException.class, () -> table.contains(null));
+        assertThrows(IllegalArgumentException.class, () -> table.put(null, "a"));
+        assertThrows(IllegalArgumentException.class, () -> table.put("a", null));
+        assertThrows(IllegalArgumentException.class, () -> table.remove(null));
+    }
+
+    @Test
+    void clear() {
+        putThousandIntegers();
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get("0"));
+        assertNull(table.put("0", "a"));
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        var random = new Random(42);
+        var expected = new HashMap<String, String>();
+        // values are long, so that replaced records fill several chunks and get compacted
+        var padding = "v".repeat(100);
+        for (int i = 0; i < 100_000; i++) {
+            var key = Integer.toString(random.nextInt(2000));
+            var value = padding + i;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, value), table.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), table.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), table.get(key));
+            }
+            assertEquals(expected.size(), table.size());
+        }
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+
+    private void putThousandIntegers() {
+        for (int i = 0; i < 1000; ++i) {
+            table.put(Integer.toString(i), Integer.toString(i + 1000));
+        }
+    }
+}
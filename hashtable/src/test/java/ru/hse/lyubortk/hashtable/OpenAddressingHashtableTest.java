@@ -0,0 +1,170 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAddressingHashtableTest {
+
+    private OpenAddressingHashtable table;
+
+    @BeforeEach
+    void initializeHashtable() {
+        table = new OpenAddressingHashtable();
+    }
+
+    @Test
+    void sizeAfterPut() {
+        assertEquals(0, table.size());
+        for (int i = 0; i < 1000; i++) {
+            table.put(Integer.toString(i), "a");
+            assertEquals(i + 1, table.size());
+        }
+    }
+
+    @Test
+    void sizeAfterDoublePut() {
+        putThousandIntegers();
+        putThousandIntegers();
+        assertEquals(1000, table.size());
+    }
+
+    @Test
+    void sizeAfterRemove() {
+        putThousandIntegers();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1000 - i, table.size());
+            table.remove(Integer.toString(i));
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void containsInTable() {
+        putThousandIntegers();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(table.contains(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    void containsNotInTable() {
+        assertFalse(table.contains("a"));
+    }
+
+    @Test
+    void containsNull() {
+        assertThrows(IllegalArgumentException.class, () -> table.contains(null));
+    }
+
+    @Test
+    void getInTable() {
+        putThousandIntegers();
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(Integer.toString(i + 1000), table.get(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    void getNotInTable() {
+        assertNull(table.get("a"));
+    }
+
+    @Test
+    void getNull() {
+        assertThrows(IllegalArgumentException.class, () -> table.get(null));
+    }
+
+    @Test
+    void putWithoutHashCollisions() {
+        assertNull(table.put("a", "b"));
+        assertEquals("b", table.put("a", "c"));
+        assertEquals("c", table.put("a", "d"));
+    }
+
+    @Test
+    void putWithHashCollisions() {
+        assertNull(table.put("Siblings", "a"));
+        assertNull(table.put("Teheran", "b"));
+        assertEquals("a", table.get("Siblings"));
+        assertEquals("b", table.get("Teheran"));
+    }
+
+    @Test
+    void putNull() {
+        assertThrows(IllegalArgumentException.class, () -> table.put(null, "a"));
+        assertThrows(IllegalArgumentException.class, () -> table.put("a", null));
+    }
+
+    @Test
+    void removeWithoutHashCollisions() {
+        putThousandIntegers();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i + 1000), table.remove(Integer.toString(i)));
+            assertNull(table.remove(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    void removeWithHashCollisions() {
+        table.put("Siblings", "a");
+        table.put("Teheran", "b");
+        assertEquals("a", table.remove("Siblings"));
+        assertEquals("b", table.get("Teheran"));
+        assertEquals("b", table.remove("Teheran"));
+    }
+
+    @Test
+    void removeNull() {
+        assertThrows(IllegalArgumentException.class, () -> table.remove(null));
+    }
+
+    @Test
+    void clear() {
+        putThousandIntegers();
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get("0"));
+    }
+
+    @Test
+    void constructorWithInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new OpenAddressingHashtable(0));
+    }
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        var random = new Random(42);
+        var expected = new HashMap<String, String>();
+        table = new OpenAddressingHashtable(1);
+        for (int i = 0; i < 100_000; i++) {
+            // few distinct keys, so that the table has long probe sequences and many removals
+            var key = Integer.toString(random.nextInt(2000));
+            var value = Integer.toString(i);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, value), table.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), table.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), table.get(key));
+            }
+            assertEquals(expected.size(), table.size());
+        }
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+
+    private void putThousandIntegers() {
+        for (int i = 0; i < 1000; ++i) {
+            table.put(Integer.toString(i), Integer.toString(i + 1000));
+        }
+    }
+}
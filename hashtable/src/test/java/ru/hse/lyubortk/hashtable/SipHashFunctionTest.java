@@ -0,0 +1,66 @@
+package ru.hse.lyubortk.hashtable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SipHashFunctionTest {
+
+    private SipHashFunction function;
+
+    @BeforeEach
+    void initializeFunction() {
+        function = new SipHashFunction(0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+    }
+
+    @Test
+    void referenceVectors() {
+        // keys of the reference implementation, chars are encoded as little-endian bytes
+        assertEquals(Long.valueOf(0x726fdb47dd0e0e31L), Long.valueOf(function.hash64("")));
+        assertEquals(Long.valueOf(0x93f5f5799a932462L),
+                Long.valueOf(function.hash64("\u0100\u0302\u0504\u0706")));
+    }
+
+    @Test
+    void hashFoldsLongHash() {
+        for (String key : new String[] {"", "a", "abcdefgh", "hash function"}) {
+            long hash = function.hash64(key);
+            assertEquals(Integer.valueOf((int) (hash ^ (hash >>> 32))),
+                    Integer.valueOf(function.hash(key)));
+        }
+    }
+
+    @Test
+    void sameKeysGiveSameHashes() {
+        assertEquals(Integer.valueOf(function.hash("abc")),
+                Integer.valueOf(function.hash(new String("abc"))));
+        assertNotEquals(Integer.valueOf(function.hash("abc")),
+                Integer.valueOf(function.hash("abd")));
+    }
+
+    @Test
+    void differentSeedsGiveDifferentHashes() {
+        var otherFunction = new SipHashFunction(1, 2);
+        assertNotEquals(Long.valueOf(function.hash64("key")),
+                Long.valueOf(otherFunction.hash64("key")));
+        assertNotEquals(Long.valueOf(new SipHashFunction().hash64("key")),
+                Long.valueOf(new SipHashFunction().hash64("key")));
+    }
+
+    @Test
+    void collidingStringHashCodes() {
+        // "Aa" and "BB" have the same String.hashCode
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(Long.valueOf(function.hash64("Aa")), Long.valueOf(function.hash64("BB")));
+    }
+
+    @Test
+    void equalSeedsGiveEqualFunctions() {
+        var sameFunction = new SipHashFunction(0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+        assertEquals(function, sameFunction);
+        assertEquals(function.hashCode(), sameFunction.hashCode());
+        assertNotEquals(function, new SipHashFunction(0x0706050403020100L, 0));
+        assertNotEquals(function, HashFunction.DEFAULT);
+    }
+}
\ No newline at end of file
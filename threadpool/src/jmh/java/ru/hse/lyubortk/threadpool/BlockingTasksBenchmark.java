@@ -0,0 +1,69 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the time needed to complete 10k concurrent tasks which are blocked most of
+ * the time, with a fixed-size {@link ThreadPool} and with thread-per-task pools which have
+ * different concurrency limits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockingTasksBenchmark {
+    private static final int NUMBER_OF_TASKS = 10_000;
+    private static final int BLOCKING_TIME_MILLIS = 20;
+
+    @Param({"fixed64", "threadPerTask1000", "threadPerTask10000"})
+    private String pool;
+
+    private ThreadPool threadPool;
+    private final ArrayList<Supplier<Integer>> suppliers = new ArrayList<>();
+
+    @Setup
+    public void createThreadPool() {
+        switch (pool) {
+            case "fixed64":
+                threadPool = new ThreadPool(64);
+                break;
+            case "threadPerTask1000":
+                threadPool = ThreadPool.newThreadPerTaskPool(1000);
+                break;
+            default:
+                threadPool = ThreadPool.newThreadPerTaskPool(10_000);
+        }
+
+        for (int i = 0; i < NUMBER_OF_TASKS; i++) {
+            int k = i;
+            suppliers.add(() -> {
+                try {
+                    Thread.sleep(BLOCKING_TIME_MILLIS);
+                } catch (InterruptedException ignored) {
+                }
+                return k;
+            });
+        }
+    }
+
+    @TearDown
+    public void shutdownThreadPool() throws InterruptedException {
+        threadPool.shutdown();
+        threadPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public long blockingTasks() throws InterruptedException, LightExecutionException {
+        long sum = 0;
+        for (var lightFuture : threadPool.executeAll(suppliers)) {
+            sum += lightFuture.get();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ThreadPool} with {@link ForkJoinPool} and {@link ThreadPoolExecutor}
+ * for different numbers of threads and task sizes. Tasks of java.util.concurrent executors
+ * are chained with {@link CompletableFuture}, which plays the role of {@link LightFuture}.
+ * Task size is the number of tokens passed to {@link Blackhole#consumeCPU}.
+ * Run with {@code gradle jmh} to get the results in build/reports/jmh/results.json.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorComparisonBenchmark {
+    private static final int PIPELINE_LENGTH = 16;
+    private static final int FAN_OUT = 1000;
+
+    @Param({"1", "4", "16"})
+    private int numberOfThreads;
+
+    @Param({"threadPool", "forkJoinPool", "threadPoolExecutor"})
+    private String executor;
+
+    @Param({"0", "100", "10000"})
+    private long taskSize;
+
+    private ThreadPool threadPool;
+    private ExecutorService executorService;
+
+    @Setup
+    public void createExecutor() {
+        switch (executor) {
+            case "threadPool":
+                threadPool = new ThreadPool(numberOfThreads);
+                break;
+            case "forkJoinPool":
+                executorService = new ForkJoinPool(numberOfThreads);
+                break;
+            default:
+                executorService = new ThreadPoolExecutor(numberOfThreads, numberOfThreads,
+                        0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        }
+    }
+
+    @TearDown
+    public void shutdownExecutor() throws InterruptedException {
+        if (threadPool != null) {
+            threadPool.shutdown();
+            threadPool.awaitTermination(1, TimeUnit.MINUTES);
+        } else {
+            executorService.shutdown();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /** Measures the time from submission of one task until its result is received. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long roundTrip() throws InterruptedException, LightExecutionException,
+            ExecutionException {
+        if (threadPool != null) {
+            return threadPool.execute(() -> work(0)).get();
+        }
+        return CompletableFuture.supplyAsync(() -> work(0), executorService).get();
+    }
+
+    /** Measures throughput of tasks in a chain where every task waits for the previous one. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @OperationsPerInvocation(PIPELINE_LENGTH)
+    public long thenApplyPipeline() throws InterruptedException, LightExecutionException,
+            ExecutionException {
+        if (threadPool != null) {
+            var lightFuture = threadPool.execute(() -> work(0));
+            for (int i = 1; i < PIPELINE_LENGTH; i++) {
+                lightFuture = lightFuture.thenApply(this::work);
+            }
+            return lightFuture.get();
+        }
+
+        var completableFuture = CompletableFuture.supplyAsync(() -> work(0), executorService);
+        for (int i = 1; i < PIPELINE_LENGTH; i++) {
+            completableFuture = completableFuture.thenApplyAsync(this::work, executorService);
+        }
+        return completableFuture.get();
+    }
+
+    /** Measures throughput of independent tasks which are submitted and then awaited together. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @OperationsPerInvocation(FAN_OUT)
+    public long fanOutFanIn() throws InterruptedException, LightExecutionException,
+            ExecutionException {
+        long sum = 0;
+        if (threadPool != null) {
+            var lightFutureList = new ArrayList<LightFuture<Long>>(FAN_OUT);
+            for (int i = 0; i < FAN_OUT; i++) {
+                long k = i;
+                lightFutureList.add(threadPool.execute(() -> work(k)));
+            }
+            for (var lightFuture : lightFutureList) {
+                sum += lightFuture.get();
+            }
+            return sum;
+        }
+
+        var completableFutureList = new ArrayList<CompletableFuture<Long>>(FAN_OUT);
+        for (int i = 0; i < FAN_OUT; i++) {
+            long k = i;
+            completableFutureList.add(CompletableFuture.supplyAsync(() -> work(k),
+                    executorService));
+        }
+        for (var completableFuture : completableFutureList) {
+            sum += completableFuture.get();
+        }
+        return sum;
+    }
+
+    private long work(long value) {
+        Blackhole.consumeCPU(taskSize);
+        return value + 1;
+    }
+}
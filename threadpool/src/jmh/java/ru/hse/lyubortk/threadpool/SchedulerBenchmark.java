@@ -0,0 +1,88 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares throughput of {@link ThreadPool} with the global FIFO queue, with the lock-free
+ * queue and with work stealing for different numbers of worker threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+    private static final int NUMBER_OF_TASKS = 10_000;
+    private static final int CHAIN_LENGTH = 4;
+    private static final int SPAWN_DEPTH = 13;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    private int numberOfThreads;
+
+    @Param({"fifo", "lockFree", "workStealing"})
+    private String scheduler;
+
+    private ThreadPool threadPool;
+
+    @Setup
+    public void createThreadPool() {
+        if (scheduler.equals("fifo")) {
+            threadPool = new ThreadPool(numberOfThreads);
+        } else if (scheduler.equals("lockFree")) {
+            threadPool = ThreadPool.newLockFreePool(numberOfThreads, NUMBER_OF_TASKS);
+        } else {
+            threadPool = ThreadPool.newWorkStealingPool(numberOfThreads);
+        }
+    }
+
+    @TearDown
+    public void shutdownThreadPool() throws InterruptedException {
+        threadPool.shutdown();
+        threadPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /** Submits many small tasks with short thenApply chains from one external thread. */
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_TASKS)
+    public long externalSubmissions() throws InterruptedException, LightExecutionException {
+        var lightFutureList = new ArrayList<LightFuture<Integer>>(NUMBER_OF_TASKS);
+        for (int i = 0; i < NUMBER_OF_TASKS; i++) {
+            int k = i;
+            var lightFuture = threadPool.execute(() -> k);
+            for (int j = 0; j < CHAIN_LENGTH; j++) {
+                lightFuture = lightFuture.thenApply((a) -> a + 1);
+            }
+            lightFutureList.add(lightFuture);
+        }
+
+        long sum = 0;
+        for (var lightFuture : lightFutureList) {
+            sum += lightFuture.get();
+        }
+        return sum;
+    }
+
+    /** Every task submits two subtasks from a worker thread until the tree is deep enough. */
+    @Benchmark
+    @OperationsPerInvocation(1 << SPAWN_DEPTH)
+    public void recursiveSubmissions() throws InterruptedException {
+        var leaves = new CountDownLatch(1 << SPAWN_DEPTH);
+        threadPool.execute(() -> spawn(SPAWN_DEPTH, leaves));
+        leaves.await();
+    }
+
+    private Void spawn(int depth, CountDownLatch leaves) {
+        if (depth == 0) {
+            leaves.countDown();
+        } else {
+            threadPool.execute(() -> spawn(depth - 1, leaves));
+            threadPool.execute(() -> spawn(depth - 1, leaves));
+        }
+        return null;
+    }
+}
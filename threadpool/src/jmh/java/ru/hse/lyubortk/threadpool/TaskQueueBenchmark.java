@@ -0,0 +1,61 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares latency of enqueue/dequeue pairs of {@link FifoTaskScheduler} and
+ * {@link LockFreeTaskScheduler} under contention. Every benchmark thread adds a task
+ * and then takes one, so the total number of stored tasks never gets below zero
+ * and {@link TaskScheduler#take} never waits forever.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskQueueBenchmark {
+    private static final Object TASK = new Object();
+
+    @Param({"fifo", "lockFree"})
+    private String scheduler;
+
+    private TaskScheduler<Object> taskScheduler;
+
+    @Setup
+    public void createScheduler() {
+        if (scheduler.equals("fifo")) {
+            taskScheduler = new FifoTaskScheduler<>();
+        } else {
+            taskScheduler = new LockFreeTaskScheduler<>(1024);
+        }
+    }
+
+    @Benchmark
+    @Group("oneThread")
+    @GroupThreads(1)
+    public Object putTakeOneThread() throws InterruptedException {
+        return putTake();
+    }
+
+    @Benchmark
+    @Group("fourThreads")
+    @GroupThreads(4)
+    public Object putTakeFourThreads() throws InterruptedException {
+        return putTake();
+    }
+
+    @Benchmark
+    @Group("sixteenThreads")
+    @GroupThreads(16)
+    public Object putTakeSixteenThreads() throws InterruptedException {
+        return putTake();
+    }
+
+    private Object putTake() throws InterruptedException {
+        taskScheduler.put(TASK, TaskScheduler.EXTERNAL_THREAD);
+        return taskScheduler.take(TaskScheduler.EXTERNAL_THREAD);
+    }
+}
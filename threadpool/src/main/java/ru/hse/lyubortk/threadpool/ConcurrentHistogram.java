@@ -0,0 +1,83 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values with log-linear buckets, like in HdrHistogram.
+ * Values less than {@link #SUB_BUCKETS} have their own buckets, and every greater power of two
+ * range is split into {@link #SUB_BUCKETS} equal buckets, so the relative error of a recorded
+ * value is less than 1 / {@link #SUB_BUCKETS}.
+ * Recording does not allocate memory. Threads record values into different stripes
+ * of buckets, so they rarely write to the same cache lines.
+ */
+class ConcurrentHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values not less than 2^(MAX_VALUE_BITS + 1) are recorded into the last bucket. */
+    private static final int MAX_VALUE_BITS = 40;
+    private static final int NUMBER_OF_BUCKETS =
+            (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 16;
+
+    private final AtomicLongArray[] stripes;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    ConcurrentHistogram() {
+        int numberOfStripes = Math.min(MAX_STRIPES,
+                Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+        stripes = new AtomicLongArray[numberOfStripes];
+        for (int i = 0; i < numberOfStripes; i++) {
+            stripes[i] = new AtomicLongArray(NUMBER_OF_BUCKETS);
+        }
+    }
+
+    /** Records the value. Negative values are recorded as zero. */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        var stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        stripe.getAndIncrement(getBucketIndex(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /** Returns a copy of the histogram. Values recorded concurrently may be partly missing. */
+    @NotNull ThreadPoolMetrics.Histogram getSnapshot() {
+        var counts = new long[NUMBER_OF_BUCKETS];
+        long totalCount = 0;
+        for (var stripe : stripes) {
+            for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+                long count = stripe.get(i);
+                counts[i] += count;
+                totalCount += count;
+            }
+        }
+        return new ThreadPoolMetrics.Histogram(counts, totalCount, sum.sum(), max.get());
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_VALUE_BITS)
+                - SUB_BUCKET_BITS;
+        int subBucket = (int) Math.min(value >>> shift, 2 * SUB_BUCKETS - 1) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the greatest value which is recorded into the bucket with given index. */
+    static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
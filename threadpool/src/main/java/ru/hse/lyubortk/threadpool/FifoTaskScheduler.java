@@ -0,0 +1,89 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler with one global queue. All workers take tasks from it in the order
+ * they were submitted.
+ */
+class FifoTaskScheduler<T> implements TaskScheduler<T> {
+    private final Queue<T> queue = new LinkedList<>();
+    private int waitingWorkers = 0;
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void put(@NotNull T task, int workerIndex) {
+        queue.offer(task);
+        if (waitingWorkers > 0) {
+            notify();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void putAll(@NotNull List<? extends T> tasks, int workerIndex) {
+        queue.addAll(tasks);
+        for (int i = Math.min(tasks.size(), waitingWorkers); i > 0; i--) {
+            notify();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized @NotNull T take(int workerIndex) throws InterruptedException {
+        waitingWorkers++;
+        try {
+            while (queue.size() == 0) {
+                wait();
+            }
+        } finally {
+            waitingWorkers--;
+        }
+        return queue.poll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized @Nullable T poll(int workerIndex) {
+        return queue.poll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized @Nullable T poll(int workerIndex, long timeoutNanos)
+            throws InterruptedException {
+        waitingWorkers++;
+        try {
+            long remainingNanos = timeoutNanos;
+            while (queue.size() == 0) {
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                long startTime = System.nanoTime();
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                remainingNanos -= System.nanoTime() - startTime;
+            }
+        } finally {
+            waitingWorkers--;
+        }
+        return queue.poll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized @Nullable T evict() {
+        return queue.poll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int size() {
+        return queue.size();
+    }
+}
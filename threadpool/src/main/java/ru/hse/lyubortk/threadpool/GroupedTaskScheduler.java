@@ -0,0 +1,232 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A scheduler which splits workers into groups, and every group has its own queue.
+ * Worker with index i belongs to the group i modulo the number of groups. A task with
+ * shard key is added to the group chosen by the hash code of the key, so tasks with equal
+ * keys are computed by the same group of workers. Other tasks submitted by a worker are
+ * added to the group of this worker, and tasks submitted by other threads are spread over
+ * the groups in turn. A worker takes tasks from the queue of its group in the order they
+ * were added, and takes the oldest tasks of other groups only when its own queue is empty.
+ */
+class GroupedTaskScheduler<T> implements TaskScheduler<T> {
+    private final Group<T>[] groups;
+    private final Function<? super T, ?> shardKey;
+    /** Group of the next task submitted by an external thread without shard key. */
+    private final AtomicInteger nextExternalGroup = new AtomicInteger();
+
+    /** Number of tasks stored in all queues. May be greater than actual number for a short time. */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+
+    /**
+     * Creates a new scheduler.
+     * @param shardKey function which returns the shard key of a task or null if the task
+     * has no shard key
+     */
+    GroupedTaskScheduler(int numberOfGroups, @NotNull Function<? super T, ?> shardKey) {
+        // the array holds only the Group<T> objects created below
+        @SuppressWarnings("unchecked")
+        var groups = (Group<T>[]) new Group<?>[numberOfGroups];
+        this.groups = groups;
+        for (int i = 0; i < numberOfGroups; i++) {
+            groups[i] = new Group<>();
+        }
+        this.shardKey = shardKey;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(@NotNull T task, int workerIndex) {
+        int groupIndex = getGroupIndex(task, workerIndex);
+        var group = groups[groupIndex];
+        // counter is incremented first so that no worker can fall asleep while task is in a queue
+        pendingTasks.incrementAndGet();
+        synchronized (group) {
+            group.queue.addLast(task);
+        }
+        wakeUpWorker(groupIndex);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void putAll(@NotNull List<? extends T> tasks, int workerIndex) {
+        pendingTasks.addAndGet(tasks.size());
+        for (var task : tasks) {
+            int groupIndex = getGroupIndex(task, workerIndex);
+            var group = groups[groupIndex];
+            synchronized (group) {
+                group.queue.addLast(task);
+            }
+            wakeUpWorker(groupIndex);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @NotNull T take(int workerIndex) throws InterruptedException {
+        int groupIndex = workerIndex % groups.length;
+        var group = groups[groupIndex];
+        boolean hasWaited = false;
+        while (true) {
+            T task = poll(workerIndex);
+            if (task != null) {
+                if (hasWaited && pendingTasks.get() > 0) {
+                    wakeUpWorker(groupIndex);
+                }
+                return task;
+            }
+
+            hasWaited = true;
+            synchronized (group.idleMonitor) {
+                group.idleWorkers++;
+                try {
+                    while (pendingTasks.get() == 0) {
+                        group.idleMonitor.wait();
+                    }
+                } finally {
+                    group.idleWorkers--;
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex) {
+        int groupIndex = workerIndex == EXTERNAL_THREAD ? 0 : workerIndex % groups.length;
+        for (int i = 0; i < groups.length; i++) {
+            var group = groups[(groupIndex + i) % groups.length];
+            T task;
+            synchronized (group) {
+                task = group.queue.pollFirst();
+            }
+            if (task != null) {
+                pendingTasks.decrementAndGet();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex, long timeoutNanos) throws InterruptedException {
+        int groupIndex = workerIndex % groups.length;
+        var group = groups[groupIndex];
+        boolean hasWaited = false;
+        long remainingNanos = timeoutNanos;
+        while (true) {
+            T task = poll(workerIndex);
+            if (task != null && hasWaited && pendingTasks.get() > 0) {
+                wakeUpWorker(groupIndex);
+            }
+            if (task != null || remainingNanos <= 0) {
+                return task;
+            }
+
+            hasWaited = true;
+            long startTime = System.nanoTime();
+            synchronized (group.idleMonitor) {
+                group.idleWorkers++;
+                try {
+                    if (pendingTasks.get() == 0) {
+                        TimeUnit.NANOSECONDS.timedWait(group.idleMonitor, remainingNanos);
+                    }
+                } finally {
+                    group.idleWorkers--;
+                }
+            }
+            remainingNanos -= System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The oldest task of the group with the longest queue is removed, so the most overloaded
+     * group loses work first.
+     */
+    @Override
+    public @Nullable T evict() {
+        while (pendingTasks.get() > 0) {
+            Group<T> longestGroup = null;
+            int longestQueueSize = 0;
+            for (var group : groups) {
+                int queueSize;
+                synchronized (group) {
+                    queueSize = group.queue.size();
+                }
+                if (queueSize > longestQueueSize) {
+                    longestGroup = group;
+                    longestQueueSize = queueSize;
+                }
+            }
+            if (longestGroup == null) {
+                return null;
+            }
+            T task;
+            synchronized (longestGroup) {
+                task = longestGroup.queue.pollFirst();
+            }
+            // otherwise the group was emptied by workers, and the sizes are checked again
+            if (task != null) {
+                pendingTasks.decrementAndGet();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return pendingTasks.get();
+    }
+
+    private int getGroupIndex(@NotNull T task, int workerIndex) {
+        var key = shardKey.apply(task);
+        if (key != null) {
+            int hash = key.hashCode();
+            // spreads higher bits of the hash, as keys often differ only in them
+            return Math.floorMod(hash ^ (hash >>> 16), groups.length);
+        }
+        if (workerIndex != EXTERNAL_THREAD) {
+            return workerIndex % groups.length;
+        }
+        return Math.floorMod(nextExternalGroup.getAndIncrement(), groups.length);
+    }
+
+    /**
+     * Wakes up an idle worker of the group the task was added to. A worker of some other
+     * group is woken up only if there are no idle workers in it. Several tasks added at once
+     * may wake up the same worker, so a woken worker wakes up the next one if there are
+     * still tasks left.
+     */
+    private void wakeUpWorker(int groupIndex) {
+        for (int i = 0; i < groups.length; i++) {
+            var group = groups[(groupIndex + i) % groups.length];
+            if (group.idleWorkers > 0) {
+                synchronized (group.idleMonitor) {
+                    group.idleMonitor.notify();
+                }
+                return;
+            }
+        }
+    }
+
+    private static class Group<T> {
+        /** Tasks of the group. Accessed only under the lock of the group. */
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private final Object idleMonitor = new Object();
+        /** Number of workers waiting on {@link #idleMonitor}. Modified only under its lock. */
+        private volatile int idleWorkers = 0;
+    }
+}
@@ -2,6 +2,12 @@ package ru.hse.lyubortk.threadpool;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -22,10 +28,102 @@ public interface LightFuture<T> {
      */
     T get() throws InterruptedException, LightExecutionException;
 
+    /**
+     * Waits at most given time until the computation is done and then returns the result.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting for
+     * the result of computation.
+     * @throws LightExecutionException if the corresponding computation finished with an exception
+     * @throws TimeoutException if the computation is not done in time
+     */
+    T get(long timeout, @NotNull TimeUnit unit)
+            throws InterruptedException, LightExecutionException, TimeoutException;
+
+    /**
+     * Waits until the computation is done and then returns the result like {@link #get}.
+     * If it is called by a worker thread of the ThreadPool which computes this task and the
+     * task is still waiting in the queue, the current thread computes the task itself instead
+     * of being blocked. So a task may submit subtasks and join them in the reverse order even
+     * if all threads of the ThreadPool do the same, and the number of nested tasks on the stack
+     * of a thread never exceeds the depth of recursion. A worker thread waits only for a task
+     * which is being computed by another worker thread.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting for
+     * the result of computation.
+     * @throws LightExecutionException if the corresponding computation finished with an exception
+     */
+    T join() throws InterruptedException, LightExecutionException;
+
+    /**
+     * Attempts to cancel the computation. If it is not done yet, it finishes with
+     * {@link CancellationException}, so {@link #get} throws {@link LightExecutionException}.
+     * A task which was not started yet is never computed. Tasks created by thenApply and
+     * similar methods which are not done yet are cancelled as well and never occupy worker
+     * threads. Only tasks created by {@link #thenApplySync} are still run, and they finish
+     * with an exception.
+     * @param mayInterruptIfRunning whether the thread which is computing the task
+     * should be interrupted
+     * @return false if the computation was already done, true otherwise
+     */
+    boolean cancel(boolean mayInterruptIfRunning);
+
+    /** Checks whether the computation was cancelled before it was done. */
+    boolean isCancelled();
+
     /**
      * Applies function to the result of computation in a new task which is added to
      * the corresponding ThreadPool. The new task will not occupy a free thread if
      * the result is not yet computed.
      */
     <S> LightFuture<S> thenApply(@NotNull Function<? super T, ? extends S> function);
+
+    /**
+     * Applies function to the result of computation on the thread which finishes
+     * the computation, or on the current thread if the result is already computed.
+     * Unlike {@link #thenApply} the new task is not added to the ThreadPool queue, so this
+     * method should be used only for cheap functions. Chains of such tasks are run one after
+     * another without recursion.
+     */
+    <S> LightFuture<S> thenApplySync(@NotNull Function<? super T, ? extends S> function);
+
+    /**
+     * Passes the result of computation to consumer in a new task which is added to
+     * the corresponding ThreadPool in the same way as in {@link #thenApply}.
+     */
+    LightFuture<Void> thenAccept(@NotNull Consumer<? super T> consumer);
+
+    /**
+     * Applies function which starts another asynchronous computation to the result of this
+     * computation. The returned LightFuture becomes ready when the computation started by
+     * function is done, and no thread waits for it in the meantime. If that computation
+     * finishes with an exception, the returned LightFuture finishes with the same exception.
+     * Function has to return LightFuture created by some ThreadPool.
+     */
+    <S> LightFuture<S> thenCompose(
+            @NotNull Function<? super T, ? extends LightFuture<S>> function);
+
+    /**
+     * Applies function to the results of this and other computations in a new task which is
+     * added to the ThreadPool of the other LightFuture, in the same way as in
+     * {@link #thenApply} of the other LightFuture, when both results are computed.
+     */
+    <U, S> LightFuture<S> thenCombine(
+            @NotNull LightFuture<? extends U> other,
+            @NotNull BiFunction<? super T, ? super U, ? extends S> function);
+
+    /**
+     * Passes the result of computation and the exception it finished with (one of them is
+     * null) to action in a new task which is added to the corresponding ThreadPool in the same
+     * way as in {@link #thenApply}. The returned LightFuture has the same result as this one,
+     * or the same exception without wrapping. If action throws an exception, the returned
+     * LightFuture finishes with it.
+     */
+    LightFuture<T> whenComplete(@NotNull BiConsumer<? super T, ? super Throwable> action);
+
+    /**
+     * Returns LightFuture which has the same result as this one if the computation finishes
+     * normally. Otherwise the result is computed by applying function to the exception
+     * in a new task which is added to the corresponding ThreadPool.
+     */
+    LightFuture<T> exceptionally(@NotNull Function<? super Throwable, ? extends T> function);
 }
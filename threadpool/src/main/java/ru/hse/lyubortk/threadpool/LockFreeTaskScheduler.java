@@ -0,0 +1,247 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A scheduler based on a bounded array-backed lock-free multi-producer multi-consumer queue.
+ * Every cell of the array has a sequence number which tells producers and consumers
+ * whether the cell may be written or read in the current lap, so neither {@link #put} nor
+ * {@link #take} takes a lock or allocates memory while the queue is neither full nor empty.
+ * An external producer spins while the queue is full. Workers never wait for free space,
+ * otherwise all of them could wait for each other: tasks which they submit to the full queue
+ * are added to the unbounded overflow queue instead. An idle worker spins for a while and
+ * then parks until a producer wakes it up.
+ */
+class LockFreeTaskScheduler<T> implements TaskScheduler<T> {
+    private static final int SPINS_BEFORE_PARK = 100;
+
+    private final int mask;
+    private final AtomicReferenceArray<T> cells;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final ConcurrentLinkedQueue<T> overflowQueue = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentLinkedQueue<Thread> parkedWorkers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger parkedWorkersNumber = new AtomicInteger();
+
+    /**
+     * Creates a new scheduler with given capacity. Capacity is rounded up to the
+     * nearest power of two and has to be greater than zero.
+     */
+    LockFreeTaskScheduler(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        cells = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(@NotNull T task, int workerIndex) {
+        for (int spins = 0; !offer(task); spins++) {
+            if (workerIndex != EXTERNAL_THREAD) {
+                overflowQueue.add(task);
+                break;
+            }
+            if (spins < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+
+        unparkWorkers(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Free cells for several tasks are reserved by one CAS on the tail of the queue.
+     */
+    @Override
+    public void putAll(@NotNull List<? extends T> tasks, int workerIndex) {
+        int added = 0;
+        int spins = 0;
+        while (added < tasks.size()) {
+            int offered = offerAll(tasks, added);
+            if (offered > 0) {
+                added += offered;
+                unparkWorkers(offered);
+                spins = 0;
+            } else if (workerIndex != EXTERNAL_THREAD) {
+                overflowQueue.addAll(tasks.subList(added, tasks.size()));
+                unparkWorkers(tasks.size() - added);
+                break;
+            } else if (spins++ < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void unparkWorkers(int maxNumber) {
+        for (int i = 0; i < maxNumber && parkedWorkersNumber.get() > 0; i++) {
+            var worker = parkedWorkers.poll();
+            if (worker == null) {
+                break;
+            }
+            parkedWorkersNumber.decrementAndGet();
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @NotNull T take(int workerIndex) throws InterruptedException {
+        T task;
+        do {
+            task = poll(workerIndex, Long.MAX_VALUE);
+        } while (task == null);
+        return task;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex, long timeoutNanos) throws InterruptedException {
+        var currentThread = Thread.currentThread();
+        long remainingNanos = timeoutNanos;
+        while (true) {
+            for (int spins = 0; spins < SPINS_BEFORE_PARK; spins++) {
+                T task = poll(workerIndex);
+                if (task != null) {
+                    return task;
+                }
+                Thread.onSpinWait();
+            }
+
+            parkedWorkers.add(currentThread);
+            parkedWorkersNumber.incrementAndGet();
+            // a producer could have added a task before it saw this worker in the queue
+            T task = poll(workerIndex);
+            boolean isInterrupted = Thread.interrupted();
+            if (task == null && !isInterrupted) {
+                long startTime = System.nanoTime();
+                LockSupport.parkNanos(this, remainingNanos);
+                remainingNanos -= System.nanoTime() - startTime;
+                isInterrupted = Thread.interrupted();
+            }
+
+            if (parkedWorkers.remove(currentThread)) {
+                parkedWorkersNumber.decrementAndGet();
+            }
+            if (task != null) {
+                if (isInterrupted) {
+                    currentThread.interrupt();
+                }
+                return task;
+            }
+            if (isInterrupted) {
+                throw new InterruptedException();
+            }
+            if (remainingNanos <= 0) {
+                return null;
+            }
+        }
+    }
+
+    private boolean offer(@NotNull T task) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    cells.lazySet(index, task);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds as many tasks starting from given index as there are consecutive free cells.
+     * @return number of added tasks
+     */
+    private int offerAll(@NotNull List<? extends T> tasks, int fromIndex) {
+        while (true) {
+            long position = tail.get();
+            int free = 0;
+            int maxNumber = Math.min(tasks.size() - fromIndex, mask + 1);
+            while (free < maxNumber
+                    && sequences.get((int) (position + free) & mask) == position + free) {
+                free++;
+            }
+            if (free == 0 && sequences.get((int) position & mask) < position) {
+                return 0;
+            }
+            if (free > 0 && tail.compareAndSet(position, position + free)) {
+                for (int i = 0; i < free; i++) {
+                    int index = (int) (position + i) & mask;
+                    cells.lazySet(index, tasks.get(fromIndex + i));
+                    sequences.set(index, position + i + 1);
+                }
+                return free;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex) {
+        T task = pollArray();
+        return task != null ? task : overflowQueue.poll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T evict() {
+        return poll(EXTERNAL_THREAD);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return (int) Math.max(tail.get() - head.get(), 0) + overflowQueue.size();
+    }
+
+    private @Nullable T pollArray() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T task = cells.get(index);
+                    cells.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return task;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * A scheduler which gives out tasks in the order of their scheduling keys, the smallest
+ * key first. Tasks with equal keys are given out in the order they were added.
+ */
+class PriorityTaskScheduler<T> implements TaskScheduler<T> {
+    private final PriorityBlockingQueue<Entry<T>> queue = new PriorityBlockingQueue<>();
+    private final ToLongFunction<? super T> schedulingKey;
+    private final AtomicLong nextSequenceNumber = new AtomicLong();
+
+    /**
+     * Creates a new scheduler.
+     * @param schedulingKey function which returns the scheduling key of a task at the moment
+     * it is added to the scheduler
+     */
+    PriorityTaskScheduler(@NotNull ToLongFunction<? super T> schedulingKey) {
+        this.schedulingKey = schedulingKey;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(@NotNull T task, int workerIndex) {
+        queue.put(newEntry(task));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void putAll(@NotNull List<? extends T> tasks, int workerIndex) {
+        var entries = new ArrayList<Entry<T>>(tasks.size());
+        for (var task : tasks) {
+            entries.add(newEntry(task));
+        }
+        queue.addAll(entries);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @NotNull T take(int workerIndex) throws InterruptedException {
+        return queue.take().task;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex) {
+        var entry = queue.poll();
+        return entry == null ? null : entry.task;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex, long timeoutNanos) throws InterruptedException {
+        var entry = queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        return entry == null ? null : entry.task;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The task with the greatest scheduling key is found by a linear scan of the queue.
+     */
+    @Override
+    public @Nullable T evict() {
+        while (true) {
+            Entry<T> lastEntry = null;
+            for (var entry : queue) {
+                if (lastEntry == null || entry.compareTo(lastEntry) > 0) {
+                    lastEntry = entry;
+                }
+            }
+            if (lastEntry == null) {
+                return null;
+            }
+            // the entry could have been taken by a worker after the scan
+            if (queue.remove(lastEntry)) {
+                return lastEntry.task;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    private @NotNull Entry<T> newEntry(@NotNull T task) {
+        return new Entry<>(task, schedulingKey.applyAsLong(task),
+                nextSequenceNumber.getAndIncrement());
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        private final T task;
+        private final long key;
+        private final long sequenceNumber;
+
+        private Entry(@NotNull T task, long key, long sequenceNumber) {
+            this.task = task;
+            this.key = key;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int compareTo(@NotNull Entry<T> other) {
+            int result = Long.compare(key, other.key);
+            return result != 0 ? result : Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.hse.lyubortk.threadpool;
+
+/**
+ * Listener of changes of the {@link ThreadPool} queue depth
+ * (see {@link ThreadPool.Builder#highWaterMark}). Methods are called by threads which add tasks
+ * to the queue or take them from it, so they should return quickly. Exceptions thrown by
+ * the methods are ignored.
+ */
+public interface QueueWatermarkListener {
+    /** Called when the number of tasks in the queue rises to the high-water mark. */
+    void onHighWaterMark(int queueDepth);
+
+    /**
+     * Called when the number of tasks in the queue falls to the low-water mark after it
+     * reached the high-water mark.
+     */
+    default void onLowWaterMark(int queueDepth) {
+    }
+}
@@ -0,0 +1,27 @@
+package ru.hse.lyubortk.threadpool;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This enum describes what {@link ThreadPool} does with a new task when its queue is full
+ * (see {@link ThreadPool.Builder#queueCapacity}).
+ */
+public enum RejectionPolicy {
+    /**
+     * The thread which submits the task waits until there is free space in the queue.
+     * Worker threads of the ThreadPool do not wait, they compute the task themselves instead,
+     * because otherwise all of them could wait for each other.
+     */
+    BLOCK,
+    /** The thread which submits the task computes it before the submitting method returns. */
+    CALLER_RUNS,
+    /** The task is rejected with {@link RejectedExecutionException}. */
+    FAIL_FAST,
+    /**
+     * The oldest task in the queue is removed and cancelled to make space for the new task.
+     * With priority scheduling the task which would be computed last is removed instead,
+     * so the most urgent tasks are kept. With worker groups the oldest task of the group
+     * with the longest queue is removed.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,59 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * This interface represents a storage of tasks which are waiting to be computed by
+ * worker threads of {@link ThreadPool}.
+ * @param <T> type of stored tasks
+ */
+interface TaskScheduler<T> {
+    /** Worker index which is used for tasks submitted by threads not belonging to the pool. */
+    int EXTERNAL_THREAD = -1;
+
+    /**
+     * Adds task to the scheduler.
+     * @param workerIndex index of the worker thread which submits the task or
+     * {@link #EXTERNAL_THREAD} if the task is submitted by some other thread
+     */
+    void put(@NotNull T task, int workerIndex);
+
+    /**
+     * Adds all tasks to the scheduler at once and wakes up no more workers than
+     * the number of added tasks.
+     * @param workerIndex index of the worker thread which submits the tasks or
+     * {@link #EXTERNAL_THREAD} if the tasks are submitted by some other thread
+     */
+    void putAll(@NotNull List<? extends T> tasks, int workerIndex);
+
+    /**
+     * Waits until there is a task for the worker with given index and returns it.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    @NotNull T take(int workerIndex) throws InterruptedException;
+
+    /** Returns a task for the worker with given index or null if there are no tasks. */
+    @Nullable T poll(int workerIndex);
+
+    /**
+     * Waits for a task for the worker with given index at most given number of nanoseconds.
+     * @return the task or null if the time is out
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    @Nullable T poll(int workerIndex, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Removes the task which is the least valuable to keep when the queue is overloaded.
+     * It is the oldest task for schedulers which give out tasks in the order they were added,
+     * and the task which would be given out last for schedulers which reorder tasks.
+     * @return the removed task or null if there are no tasks
+     */
+    @Nullable T evict();
+
+    /** Returns the number of stored tasks. The result may be approximate. */
+    int size();
+}
@@ -3,116 +3,1261 @@ package ru.hse.lyubortk.threadpool;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-/** A simple thread pool class with fixed number of threads */
+/**
+ * A simple thread pool class. By default it has fixed number of threads, but it can also
+ * start threads on demand up to some maximum number.
+ */
 public class ThreadPool {
+    /**
+     * Inline tasks which wait to be run by the current thread. The queue is not null only
+     * while the thread runs inline tasks, so nested inline tasks are not run recursively.
+     */
+    private static final ThreadLocal<Queue<Task<?>>> inlineTasksQueue = new ThreadLocal<>();
+
     private volatile boolean isShutdown = false;
-    private final Thread[] threads;
-    private final BlockingQueue<Task<?>> taskQueue = new BlockingQueue<>();
+    /** Whether workers have to finish without computing queued tasks. */
+    private volatile boolean isStopped = false;
+    /**
+     * Number of tasks added to the queue which are not computed yet, plus one until the
+     * ThreadPool is shut down. The ThreadPool terminates when it becomes zero, and after that
+     * it never changes.
+     */
+    private final AtomicInteger numberOfUnfinishedTasks = new AtomicInteger(1);
+    private final Object terminationMonitor = new Object();
+    private final TaskScheduler<Task<?>> taskScheduler;
+
+    /** Worker threads which are alive. */
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger numberOfThreads = new AtomicInteger();
+    /** Number of workers which are waiting for a task. */
+    private final AtomicInteger numberOfIdleThreads = new AtomicInteger();
+    /**
+     * Indices of alive workers, guarded by its own lock. A new worker takes the lowest free
+     * index, so indices stay less than the number of threads and retired ones are reused.
+     */
+    private final BitSet usedWorkerIndices = new BitSet();
+
+    /** Threads above the number of permanent workers are started on demand. */
+    private final int maxNumberOfThreads;
+    /** Time a temporary worker waits for a new task before it finishes. */
+    private final long keepAliveNanos;
+    /** A new thread is started when more tasks than this number wait for idle threads. */
+    private final int queueDepthThreshold;
+    /** A new thread is started when some task has waited in the queue longer than that. */
+    private final long queueWaitThresholdNanos;
+    /** A task with priority p is scheduled as if it was submitted p quanta earlier. */
+    private final long agingQuantumNanos;
+
+    /** Maximum number of tasks in the queue which is checked when tasks are submitted. */
+    private final int queueCapacity;
+    private final @NotNull RejectionPolicy rejectionPolicy;
+    private final int highWaterMark;
+    private final int lowWaterMark;
+    private final @Nullable QueueWatermarkListener queueWatermarkListener;
+    /** Whether {@link #numberOfQueuedTasks} is counted. */
+    private final boolean isQueueCounted;
+    /** Number of tasks in the queue, including tasks which are being added to it. */
+    private final AtomicInteger numberOfQueuedTasks = new AtomicInteger();
+    private final AtomicBoolean isHighWaterMarkReached = new AtomicBoolean(false);
+    /** Threads which wait for free space in the queue wait on this monitor. */
+    private final Object queueCapacityMonitor = new Object();
+    /** Number of threads waiting on {@link #queueCapacityMonitor}. Modified under its lock. */
+    private volatile int numberOfBlockedProducers = 0;
+
+    private final LongAdder numberOfCompletedTasks = new LongAdder();
+    private final LongAdder numberOfFailedTasks = new LongAdder();
+    private final LongAdder numberOfRejectedTasks = new LongAdder();
+    private final LongAdder numberOfContinuations = new LongAdder();
+    /** Number of continuations stored in queues of tasks which are not ready yet. */
+    private final LongAdder numberOfPendingContinuations = new LongAdder();
+    private final ConcurrentHistogram queueWaitTime = new ConcurrentHistogram();
+    private final ConcurrentHistogram executionTime = new ConcurrentHistogram();
 
     /**
      * Creates a new ThreadPool with given number of threads. The number of threads
      * has to be greater than zero.
      */
     public ThreadPool(int numberOfThreads) {
+        this(numberOfThreads, new FifoTaskScheduler<>());
+    }
+
+    private ThreadPool(int numberOfThreads, @NotNull TaskScheduler<Task<?>> taskScheduler) {
+        this(new Builder().threads(numberOfThreads, numberOfThreads), taskScheduler);
+    }
+
+    /**
+     * Creates a new ThreadPool with parameters of the builder.
+     * Permanent workers have indices from zero to their number minus one.
+     */
+    private ThreadPool(@NotNull Builder builder, @NotNull TaskScheduler<Task<?>> taskScheduler) {
+        this.taskScheduler = taskScheduler;
+        maxNumberOfThreads = builder.maxNumberOfThreads;
+        keepAliveNanos = builder.keepAliveNanos;
+        queueDepthThreshold = builder.queueDepthThreshold;
+        queueWaitThresholdNanos = builder.queueWaitThresholdNanos;
+        agingQuantumNanos = builder.agingQuantumNanos;
+        queueCapacity = builder.queueCapacity;
+        rejectionPolicy = builder.rejectionPolicy;
+        highWaterMark = builder.highWaterMark;
+        lowWaterMark = builder.lowWaterMark;
+        queueWatermarkListener = builder.queueWatermarkListener;
+        isQueueCounted = queueCapacity != Integer.MAX_VALUE || queueWatermarkListener != null;
+
+        numberOfThreads.set(builder.numberOfPermanentThreads);
+        for (int i = 0; i < builder.numberOfPermanentThreads; i++) {
+            startWorker(true);
+        }
+    }
+
+    /** Returns a builder of ThreadPool which is able to change the number of its threads. */
+    public static @NotNull Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a new ThreadPool with given number of threads which uses work stealing.
+     * Every worker has its own deque of tasks. Tasks submitted by a worker (including
+     * thenApply tasks released by a task which was computed by this worker) are added to its
+     * deque, and idle workers steal tasks from the deques of other workers. Tasks are not
+     * guaranteed to be computed in the order they were submitted.
+     * The number of threads has to be greater than zero.
+     */
+    public static @NotNull ThreadPool newWorkStealingPool(int numberOfThreads) {
         if (numberOfThreads < 1) {
             throw new IllegalArgumentException();
         }
+        return new ThreadPool(numberOfThreads, new WorkStealingTaskScheduler<>(numberOfThreads));
+    }
 
-        threads = new Thread[numberOfThreads];
-        for (int i = 0; i < numberOfThreads; i++) {
-            threads[i] = new Thread(() -> {
-                while (!isShutdown) {
-                    try {
-                        var task = taskQueue.take();
-                        task.run();
-                    } catch (InterruptedException ignored) {
-                    }
-                }
-            });
-            threads[i].start();
-        }
+    /**
+     * Creates a new ThreadPool with given number of threads which uses a bounded lock-free
+     * queue of tasks. {@link #execute} does not take locks, but it spins while the queue is full.
+     * Tasks are computed in the order they were submitted. Both the number of threads and
+     * the capacity of the queue have to be greater than zero.
+     */
+    public static @NotNull ThreadPool newLockFreePool(int numberOfThreads, int queueCapacity) {
+        return new ThreadPool(numberOfThreads, new LockFreeTaskScheduler<>(queueCapacity));
+    }
+
+    /**
+     * Creates a new ThreadPool with given number of threads which computes tasks in the order
+     * of their priorities and deadlines (see {@link Builder#priorityScheduling}).
+     * The number of threads has to be greater than zero.
+     */
+    public static @NotNull ThreadPool newPriorityPool(int numberOfThreads) {
+        return builder().threads(numberOfThreads, numberOfThreads).priorityScheduling().build();
+    }
+
+    /**
+     * Creates a new ThreadPool with given number of threads which are split into groups
+     * (see {@link Builder#workerGroups}). Both numbers have to be greater than zero.
+     */
+    public static @NotNull ThreadPool newWorkerGroupPool(int numberOfThreads,
+                                                         int numberOfGroups) {
+        return builder().threads(numberOfThreads, numberOfThreads)
+                .workerGroups(numberOfGroups).build();
+    }
+
+    /**
+     * Creates a new ThreadPool which has no permanent threads and starts a new thread for
+     * every added task while the number of running threads is less than maxConcurrency.
+     * Other tasks wait in the queue in the order they were submitted. A thread finishes
+     * as soon as there are no tasks in the queue. This pool suits tasks which spend most
+     * of the time being blocked (for example, by IO): such tasks do not starve each other
+     * the way they do in a pool with small fixed number of threads.
+     * The maximum number of threads has to be greater than zero.
+     */
+    public static @NotNull ThreadPool newThreadPerTaskPool(int maxConcurrency) {
+        return builder().threads(0, maxConcurrency).build();
     }
 
     /**
      * Adds task to the ThreadPool. The task will be computed when any worker thread is free and
-     * there is no other tasks submitted before this task.
+     * there is no other tasks submitted before this task. If the queue of the ThreadPool is
+     * full, the task is handled according to its {@link RejectionPolicy}.
+     * @throws RejectedExecutionException if the task is rejected because the queue is full
      */
     public <T> LightFuture<T> execute(@NotNull Supplier<? extends T> supplier) {
+        return execute(new Task<>(supplier));
+    }
+
+    /**
+     * Adds task with given priority to the ThreadPool. If the ThreadPool uses priority
+     * scheduling, a task with greater priority is computed before tasks which were submitted
+     * later or not much earlier (see {@link Builder#agingQuantum}). Tasks created by thenApply
+     * and similar methods of the returned LightFuture have the same priority.
+     * Other ThreadPools ignore priorities.
+     * Tasks added by {@link #execute(Supplier)} have zero priority.
+     */
+    public <T> LightFuture<T> execute(@NotNull Supplier<? extends T> supplier, int priority) {
+        var task = new Task<T>(supplier);
+        task.priority = priority;
+        return execute(task);
+    }
+
+    /**
+     * Adds task with given deadline to the ThreadPool. If the task is not started before
+     * the deadline, it is not computed at all and the returned LightFuture finishes with
+     * {@link TimeoutException}, so {@link LightFuture#get} throws
+     * {@link LightExecutionException}. A thread waiting in {@link LightFuture#get} finishes
+     * the LightFuture as soon as the deadline passes, even if all workers are busy, and so
+     * does {@link LightFuture#isReady} called after the deadline. Otherwise the LightFuture
+     * finishes when a worker takes the task from the queue. If the ThreadPool uses priority
+     * scheduling, tasks with earlier deadlines are computed first.
+     */
+    public <T> LightFuture<T> execute(@NotNull Supplier<? extends T> supplier,
+                                      @NotNull Instant deadline) {
+        var task = new Task<T>(supplier);
+        task.hasDeadline = true;
+        task.deadline = toNanoTime(deadline);
+        return execute(task);
+    }
+
+    /**
+     * Adds task with given shard key to the ThreadPool. If the ThreadPool has worker groups,
+     * tasks with equal keys are added to the queue of the same group, so related tasks are
+     * computed by the same workers and their data stays in the caches of the same cores.
+     * Tasks created by thenApply and similar methods of the returned LightFuture have
+     * the same shard key. Other ThreadPools ignore shard keys.
+     */
+    public <T> LightFuture<T> executeSharded(@NotNull Supplier<? extends T> supplier,
+                                             @NotNull Object shardKey) {
+        var task = new Task<T>(supplier);
+        task.shardKey = shardKey;
+        return execute(task);
+    }
+
+    private <T> LightFuture<T> execute(@NotNull Task<T> task) {
         if (isShutdown) {
+            numberOfRejectedTasks.increment();
             throw new IllegalStateException();
         }
 
-        var task = new Task<T>(supplier);
-        taskQueue.put(task);
+        submitTask(task, currentWorkerIndex());
         return task;
     }
 
+    /** Adds task to the queue if there is free space or applies the rejection policy. */
+    private void submitTask(@NotNull Task<?> task, int workerIndex) {
+        if (queueCapacity == Integer.MAX_VALUE) {
+            addTask(task, workerIndex);
+            return;
+        }
+        if (tryReserveQueueSpace(1)) {
+            enqueueTask(task, workerIndex);
+            return;
+        }
+
+        switch (rejectionPolicy) {
+            case BLOCK:
+                if (workerIndex != TaskScheduler.EXTERNAL_THREAD) {
+                    task.run();
+                    return;
+                }
+                awaitQueueSpace();
+                enqueueTask(task, workerIndex);
+                return;
+            case CALLER_RUNS:
+                task.run();
+                return;
+            case FAIL_FAST:
+                numberOfRejectedTasks.increment();
+                throw new RejectedExecutionException();
+            case DROP_OLDEST:
+                while (!tryReserveQueueSpace(1)) {
+                    var evictedTask = taskScheduler.evict();
+                    if (evictedTask != null) {
+                        if (cancelQueuedTask(evictedTask)) {
+                            numberOfRejectedTasks.increment();
+                        }
+                    } else {
+                        // the queue is full of tasks which are being added
+                        Thread.onSpinWait();
+                    }
+                }
+                enqueueTask(task, workerIndex);
+                return;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * Adds all tasks to the ThreadPool at once. Unlike calling {@link #execute} for every
+     * supplier, the tasks are added to the queue in one operation and no more worker threads
+     * are woken up than the number of tasks. Tasks are added in the iteration order of the
+     * collection.
+     * If the queue is bounded and has no space for all tasks, a {@link RejectionPolicy#FAIL_FAST}
+     * ThreadPool rejects all of them, so no task is computed. Other ThreadPools apply their
+     * rejection policy to every task separately, and the tasks are added to the queue one by
+     * one. If the submitting thread is interrupted or the ThreadPool is shut down while
+     * a {@link RejectionPolicy#BLOCK} ThreadPool waits for space, the tasks which are not added
+     * yet finish with the exception {@link #execute} would throw, and the tasks which are
+     * added are computed.
+     * @return list of LightFutures in the same order as suppliers
+     * @throws RejectedExecutionException if the tasks are rejected because the queue is full
+     */
+    public <T> List<LightFuture<T>> executeAll(
+            @NotNull Collection<? extends Supplier<? extends T>> suppliers) {
+        if (isShutdown) {
+            numberOfRejectedTasks.add(suppliers.size());
+            throw new IllegalStateException();
+        }
+
+        var tasks = new ArrayList<Task<T>>(suppliers.size());
+        for (var supplier : suppliers) {
+            tasks.add(new Task<T>(supplier));
+        }
+        boolean isBounded = queueCapacity != Integer.MAX_VALUE;
+        if (isBounded && !tryReserveQueueSpace(tasks.size())) {
+            if (rejectionPolicy == RejectionPolicy.FAIL_FAST) {
+                numberOfRejectedTasks.add(tasks.size());
+                throw new RejectedExecutionException();
+            }
+            submitTasks(tasks);
+            return Collections.unmodifiableList(tasks);
+        }
+
+        long submissionTime = System.nanoTime();
+        for (var task : tasks) {
+            task.setSubmissionTime(submissionTime);
+            task.isQueued = true;
+        }
+        if (isStopped || !tryAddUnfinishedTasks(tasks.size())) {
+            if (isBounded) {
+                removeQueuedTasks(tasks.size());
+            }
+            for (var task : tasks) {
+                task.cancel();
+            }
+        } else {
+            // space in a bounded queue is already reserved
+            if (isQueueCounted && !isBounded) {
+                addQueuedTasks(tasks.size());
+            }
+            taskScheduler.putAll(tasks, currentWorkerIndex());
+            if (isStopped) {
+                cancelQueuedTasks();
+            }
+            startTemporaryWorkers(tasks.size());
+        }
+        return Collections.unmodifiableList(tasks);
+    }
+
+    /**
+     * Submits tasks one by one applying the rejection policy to every task. If a task cannot be
+     * submitted, it and the following tasks finish with the thrown exception.
+     */
+    private <T> void submitTasks(@NotNull List<Task<T>> tasks) {
+        int workerIndex = currentWorkerIndex();
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                submitTask(tasks.get(i), workerIndex);
+            } catch (RuntimeException e) {
+                // the rejection of the current task is already counted
+                numberOfRejectedTasks.add(tasks.size() - i - 1);
+                for (int j = i; j < tasks.size(); j++) {
+                    tasks.get(j).complete(null, e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds all tasks to the ThreadPool in the same way as {@link #executeAll} and waits
+     * until all of them are done, either normally or with an exception.
+     * @return list of ready LightFutures in the same order as suppliers
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public <T> List<LightFuture<T>> invokeAll(
+            @NotNull Collection<? extends Supplier<? extends T>> suppliers)
+            throws InterruptedException {
+        var lightFutures = this.<T>executeAll(suppliers);
+        for (var lightFuture : lightFutures) {
+            ((Task<T>) lightFuture).awaitReady();
+        }
+        return lightFutures;
+    }
+
+    /** Returns the number of worker threads which are alive. */
+    public int getNumberOfThreads() {
+        return numberOfThreads.get();
+    }
+
+    /**
+     * Returns current metrics of the ThreadPool. Metrics are always collected, and
+     * this method may be called at any time, including after shutdown.
+     */
+    public @NotNull ThreadPoolMetrics getMetrics() {
+        int idleThreads = numberOfIdleThreads.get();
+        return new ThreadPoolMetrics(
+                taskScheduler.size(),
+                Math.max(0, numberOfThreads.get() - idleThreads),
+                idleThreads,
+                numberOfCompletedTasks.sum(),
+                numberOfFailedTasks.sum(),
+                numberOfRejectedTasks.sum(),
+                numberOfContinuations.sum(),
+                numberOfPendingContinuations.sum(),
+                queueWaitTime.getSnapshot(),
+                executionTime.getSnapshot());
+    }
+
+    /**
+     * Initiates a graceful shutdown of the ThreadPool. No new tasks will be accepted after this
+     * operation, but all tasks which were already added are computed by worker threads,
+     * including thenApply tasks which are added by these tasks. Worker threads finish when
+     * there are no tasks left. This method does not wait for that, use
+     * {@link #awaitTermination} instead.
+     */
+    public void shutdown() {
+        synchronized (terminationMonitor) {
+            if (isShutdown) {
+                return;
+            }
+            isShutdown = true;
+        }
+        if (numberOfBlockedProducers > 0) {
+            synchronized (queueCapacityMonitor) {
+                queueCapacityMonitor.notifyAll();
+            }
+        }
+        finishTask();
+    }
+
+    /**
+     * Initiates a shutdown of the ThreadPool and removes all tasks from the queue. Removed
+     * tasks finish with {@link CancellationException}, so their {@link LightFuture#get}
+     * throws {@link LightExecutionException}. The same happens to thenApply tasks which
+     * are released later. Worker threads are interrupted and finish after
+     * their current tasks.
+     * @return LightFutures of removed tasks which are cancelled, excluding tasks which were
+     * already started by joining threads or finished while they were queued
+     */
+    public @NotNull List<LightFuture<?>> shutdownNow() {
+        shutdown();
+        isStopped = true;
+        var cancelledTasks = cancelQueuedTasks();
+        for (var worker : workers) {
+            worker.interrupt();
+        }
+        return cancelledTasks;
+    }
+
+    /** Returns whether the ThreadPool was shut down. */
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    /** Returns whether the ThreadPool was shut down and all its worker threads finished. */
+    public boolean isTerminated() {
+        return numberOfUnfinishedTasks.get() == 0 && numberOfThreads.get() == 0;
+    }
+
+    /**
+     * Waits until the ThreadPool is terminated after a shutdown, at most given time.
+     * @return whether the ThreadPool is terminated
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean awaitTermination(long time, @NotNull TimeUnit unit)
+            throws InterruptedException {
+        long remainingNanos = unit.toNanos(time);
+        synchronized (terminationMonitor) {
+            while (!isTerminated()) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                long startTime = System.nanoTime();
+                TimeUnit.NANOSECONDS.timedWait(terminationMonitor, remainingNanos);
+                remainingNanos -= System.nanoTime() - startTime;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds task to the queue regardless of its capacity. It is used for tasks which were
+     * accepted earlier, such as thenApply tasks released by their parents.
+     */
+    private void addTask(@NotNull Task<?> task, int workerIndex) {
+        if (isQueueCounted) {
+            addQueuedTasks(1);
+        }
+        enqueueTask(task, workerIndex);
+    }
+
+    /**
+     * Adds task to the queue for which space is already counted in
+     * {@link #numberOfQueuedTasks}. If the ThreadPool is terminated or stopped,
+     * the task is cancelled instead.
+     */
+    private void enqueueTask(@NotNull Task<?> task, int workerIndex) {
+        if (isStopped || !tryAddUnfinishedTasks(1)) {
+            if (isQueueCounted) {
+                removeQueuedTasks(1);
+            }
+            task.cancel();
+            return;
+        }
+        task.setSubmissionTime(System.nanoTime());
+        task.isQueued = true;
+        taskScheduler.put(task, workerIndex);
+        // shutdownNow could have emptied the queue before the task was added
+        if (isStopped) {
+            cancelQueuedTasks();
+        }
+        startTemporaryWorkers(1);
+    }
+
+    /**
+     * Increases the number of queued tasks unless the queue has no space for all tasks.
+     * @return whether the number was increased
+     */
+    private boolean tryReserveQueueSpace(int numberOfTasks) {
+        while (true) {
+            int currentNumber = numberOfQueuedTasks.get();
+            if (currentNumber > queueCapacity - numberOfTasks) {
+                return false;
+            }
+            if (numberOfQueuedTasks.compareAndSet(currentNumber, currentNumber + numberOfTasks)) {
+                checkHighWaterMark(currentNumber + numberOfTasks, numberOfTasks);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits until there is free space in the queue and reserves it.
+     * @throws IllegalStateException if the ThreadPool is shut down while waiting
+     * @throws RejectedExecutionException if the current thread is interrupted while waiting
+     */
+    private void awaitQueueSpace() {
+        synchronized (queueCapacityMonitor) {
+            numberOfBlockedProducers++;
+            try {
+                while (!tryReserveQueueSpace(1)) {
+                    if (isShutdown) {
+                        numberOfRejectedTasks.increment();
+                        throw new IllegalStateException();
+                    }
+                    queueCapacityMonitor.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                numberOfRejectedTasks.increment();
+                throw new RejectedExecutionException(e);
+            } finally {
+                numberOfBlockedProducers--;
+            }
+        }
+    }
+
+    private void addQueuedTasks(int numberOfTasks) {
+        checkHighWaterMark(numberOfQueuedTasks.addAndGet(numberOfTasks), numberOfTasks);
+    }
+
+    /** Wakes up threads waiting for free space and reports the low-water mark. */
+    private void removeQueuedTasks(int numberOfTasks) {
+        int queueDepth = numberOfQueuedTasks.addAndGet(-numberOfTasks);
+        if (numberOfBlockedProducers > 0) {
+            synchronized (queueCapacityMonitor) {
+                for (int i = 0; i < numberOfTasks; i++) {
+                    queueCapacityMonitor.notify();
+                }
+            }
+        }
+        if (queueWatermarkListener != null && queueDepth <= lowWaterMark
+                && isHighWaterMarkReached.compareAndSet(true, false)) {
+            try {
+                queueWatermarkListener.onLowWaterMark(queueDepth);
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Reports the high-water mark if the queue depth has reached it.
+     * @param numberOfAddedTasks number of tasks by which the queue depth has just grown
+     */
+    private void checkHighWaterMark(int queueDepth, int numberOfAddedTasks) {
+        if (queueWatermarkListener != null && queueDepth >= highWaterMark
+                && queueDepth - numberOfAddedTasks < highWaterMark
+                && isHighWaterMarkReached.compareAndSet(false, true)) {
+            try {
+                queueWatermarkListener.onHighWaterMark(queueDepth);
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Increases the number of unfinished tasks unless the ThreadPool is terminated.
+     * @return whether the number was increased
+     */
+    private boolean tryAddUnfinishedTasks(int numberOfTasks) {
+        while (true) {
+            int currentNumber = numberOfUnfinishedTasks.get();
+            if (currentNumber == 0) {
+                return false;
+            }
+            if (numberOfUnfinishedTasks.compareAndSet(currentNumber,
+                    currentNumber + numberOfTasks)) {
+                return true;
+            }
+        }
+    }
+
+    /** Decreases the number of unfinished tasks and terminates the ThreadPool if it is zero. */
+    private void finishTask() {
+        if (numberOfUnfinishedTasks.decrementAndGet() != 0) {
+            return;
+        }
+        for (var worker : workers) {
+            worker.interrupt();
+        }
+        synchronized (terminationMonitor) {
+            terminationMonitor.notifyAll();
+        }
+    }
+
+    /** Removes all tasks from the queue and cancels them. */
+    private @NotNull List<LightFuture<?>> cancelQueuedTasks() {
+        var cancelledTasks = new ArrayList<LightFuture<?>>();
+        Task<?> task;
+        while ((task = taskScheduler.poll(TaskScheduler.EXTERNAL_THREAD)) != null) {
+            if (cancelQueuedTask(task)) {
+                cancelledTasks.add(task);
+            }
+        }
+        return cancelledTasks;
+    }
+
     /**
-     * Initiates a shutdown of the ThreadPool.
-     * Attempts to stop all currently executing tasks by interrupting worker threads.
-     * No new tasks will be accepted after this operation.
+     * Cancels task which was removed from the queue unless it was started by a joining
+     * thread or finished while it was queued. Its space in the queue is released anyway.
+     * @return whether the task was cancelled
      */
-    public void shutdown() throws InterruptedException {
-        isShutdown = true;
-        for (var thread : threads) {
-            thread.interrupt();
+    private boolean cancelQueuedTask(@NotNull Task<?> task) {
+        if (isQueueCounted) {
+            removeQueuedTasks(1);
         }
-        for (var thread : threads) {
-            thread.join();
+        boolean isCancelled = task.cancelQueued();
+        finishTask();
+        return isCancelled;
+    }
+
+    /**
+     * Starts a new temporary worker for every added task while the number of threads
+     * is less than maximum and the number of tasks which wait for idle threads
+     * exceeds {@link #queueDepthThreshold}. If there are no threads at all,
+     * one is started for any number of waiting tasks.
+     */
+    private void startTemporaryWorkers(int numberOfTasks) {
+        for (int i = 0; i < numberOfTasks && numberOfThreads.get() < maxNumberOfThreads; i++) {
+            int numberOfWaitingTasks = taskScheduler.size() - numberOfIdleThreads.get();
+            boolean isOverloaded = numberOfWaitingTasks > queueDepthThreshold
+                    || (numberOfWaitingTasks > 0 && numberOfThreads.get() == 0);
+            if (!isOverloaded || !startTemporaryWorker()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts a new temporary worker if the number of threads is less than maximum.
+     * @return whether the worker was started
+     */
+    private boolean startTemporaryWorker() {
+        while (true) {
+            int currentNumber = numberOfThreads.get();
+            if (currentNumber >= maxNumberOfThreads) {
+                return false;
+            }
+            if (numberOfThreads.compareAndSet(currentNumber, currentNumber + 1)) {
+                startWorker(false);
+                return true;
+            }
+        }
+    }
+
+    private void startWorker(boolean isPermanent) {
+        int index;
+        synchronized (usedWorkerIndices) {
+            index = usedWorkerIndices.nextClearBit(0);
+            usedWorkerIndices.set(index);
+        }
+        var worker = new Worker(index, isPermanent);
+        workers.add(worker);
+        worker.start();
+    }
+
+    /** Converts the instant to the corresponding value of {@link System#nanoTime}. */
+    private static long toNanoTime(@NotNull Instant instant) {
+        long currentNanoTime = System.nanoTime();
+        var timeLeft = Duration.between(Instant.now(), instant);
+        // avoids overflow of Duration#toNanos, which is possible for instants ~292 years away
+        var maxTimeLeft = Duration.ofNanos(Long.MAX_VALUE / 4);
+        if (timeLeft.compareTo(maxTimeLeft) > 0) {
+            timeLeft = maxTimeLeft;
+        } else if (timeLeft.compareTo(maxTimeLeft.negated()) < 0) {
+            timeLeft = maxTimeLeft.negated();
+        }
+        return currentNanoTime + timeLeft.toNanos();
+    }
+
+    /**
+     * Returns index of the current thread if it is a worker of this ThreadPool
+     * or {@link TaskScheduler#EXTERNAL_THREAD} otherwise.
+     */
+    private int currentWorkerIndex() {
+        var thread = Thread.currentThread();
+        if (thread instanceof Worker && ((Worker) thread).getThreadPool() == this) {
+            return ((Worker) thread).index;
+        }
+        return TaskScheduler.EXTERNAL_THREAD;
+    }
+
+    /**
+     * Adds task which was released by its parent to the ThreadPool or, if it is an
+     * inline task, runs it on the current thread.
+     */
+    private void releaseTask(@NotNull Task<?> task, int workerIndex) {
+        if (!task.isInline) {
+            addTask(task, workerIndex);
+            return;
+        }
+
+        var queue = inlineTasksQueue.get();
+        if (queue != null) {
+            queue.add(task);
+            return;
+        }
+
+        queue = new ArrayDeque<>();
+        inlineTasksQueue.set(queue);
+        try {
+            for (Task<?> nextTask = task; nextTask != null; nextTask = queue.poll()) {
+                nextTask.run();
+            }
+        } finally {
+            inlineTasksQueue.remove();
+        }
+    }
+
+    /** Runs task which was taken from the queue by a worker thread. */
+    private void runQueuedTask(@NotNull Task<?> task) {
+        if (isQueueCounted) {
+            removeQueuedTasks(1);
+        }
+        // a task which was joined, cancelled or expired while it was queued has not waited
+        // for a worker, so it only releases its space in the queue
+        if (!task.isStarted && !task.isReady) {
+            long waitTime = System.nanoTime() - task.submissionTime;
+            queueWaitTime.record(waitTime);
+            if (waitTime > queueWaitThresholdNanos) {
+                startTemporaryWorker();
+            }
+        }
+        try {
+            task.run();
+        } finally {
+            finishTask();
+        }
+    }
+
+    private class Worker extends Thread {
+        private final int index;
+        /** Temporary workers finish when they do not get a task during keep-alive time. */
+        private final boolean isPermanent;
+
+        private Worker(int index, boolean isPermanent) {
+            this.index = index;
+            this.isPermanent = isPermanent;
+        }
+
+        private @NotNull ThreadPool getThreadPool() {
+            return ThreadPool.this;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            while (!isStopped && numberOfUnfinishedTasks.get() != 0) {
+                try {
+                    Task<?> task;
+                    numberOfIdleThreads.incrementAndGet();
+                    try {
+                        task = isPermanent ? taskScheduler.take(index)
+                                : taskScheduler.poll(index, keepAliveNanos);
+                    } finally {
+                        numberOfIdleThreads.decrementAndGet();
+                    }
+                    if (task == null) {
+                        break;
+                    }
+                    try {
+                        runQueuedTask(task);
+                    } finally {
+                        // clears the interrupt which could have been sent by cancel of the task
+                        Thread.interrupted();
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            workers.remove(this);
+            // the index is freed before a new worker can be started in place of this one
+            synchronized (usedWorkerIndices) {
+                usedWorkerIndices.clear(index);
+            }
+            numberOfThreads.decrementAndGet();
+            // a task could have been added while the number of threads was at maximum
+            if (!isPermanent && !isStopped) {
+                startTemporaryWorkers(1);
+            }
+            if (isTerminated()) {
+                synchronized (terminationMonitor) {
+                    terminationMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * This class creates ThreadPools which have some permanent threads and start temporary
+     * threads under load. A temporary thread is started when a task is added and the number
+     * of tasks waiting for idle threads exceeds the queue depth threshold, or when a worker
+     * takes a task which has waited longer than the queue wait threshold. A temporary thread
+     * finishes after it has been idle for keep-alive time.
+     * Tasks are computed in the order they were submitted unless priority scheduling is used
+     * (or within a group of workers, see {@link #workerGroups}).
+     */
+    public static class Builder {
+        private static final long DEFAULT_AGING_QUANTUM_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+        private static final long MAX_AGING_QUANTUM_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private int numberOfPermanentThreads = 1;
+        private int maxNumberOfThreads = 1;
+        private long keepAliveNanos = 0;
+        private int queueDepthThreshold = 0;
+        private long queueWaitThresholdNanos = Long.MAX_VALUE;
+        private boolean isPriorityScheduling = false;
+        private long agingQuantumNanos = DEFAULT_AGING_QUANTUM_NANOS;
+        private int numberOfWorkerGroups = 0;
+        private int queueCapacity = Integer.MAX_VALUE;
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.BLOCK;
+        private int highWaterMark = Integer.MAX_VALUE;
+        private int lowWaterMark = 0;
+        private QueueWatermarkListener queueWatermarkListener = null;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of permanent threads and the maximum number of threads. The first
+         * one must not be negative and the second one has to be positive and not less than
+         * the first one. Both numbers are one by default.
+         */
+        public @NotNull Builder threads(int numberOfPermanentThreads, int maxNumberOfThreads) {
+            if (numberOfPermanentThreads < 0 || maxNumberOfThreads < 1
+                    || maxNumberOfThreads < numberOfPermanentThreads) {
+                throw new IllegalArgumentException();
+            }
+            this.numberOfPermanentThreads = numberOfPermanentThreads;
+            this.maxNumberOfThreads = maxNumberOfThreads;
+            return this;
+        }
+
+        /** Sets keep-alive time of temporary threads. It is zero by default. */
+        public @NotNull Builder keepAlive(long time, @NotNull TimeUnit unit) {
+            if (time < 0) {
+                throw new IllegalArgumentException();
+            }
+            keepAliveNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets the number of tasks waiting for idle threads above which a new thread
+         * is started. It is zero by default, i.e. a thread is started for every task
+         * which cannot be taken by an idle thread.
+         */
+        public @NotNull Builder queueDepthThreshold(int numberOfTasks) {
+            if (numberOfTasks < 0) {
+                throw new IllegalArgumentException();
+            }
+            queueDepthThreshold = numberOfTasks;
+            return this;
+        }
+
+        /**
+         * Sets the time a task may wait in the queue before a new thread is started.
+         * By default a thread is not started because of waiting time.
+         */
+        public @NotNull Builder queueWaitThreshold(long time, @NotNull TimeUnit unit) {
+            if (time < 0) {
+                throw new IllegalArgumentException();
+            }
+            queueWaitThresholdNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Makes the ThreadPool compute tasks in the order of their scheduling keys instead
+         * of the order of submission. The key of a task with deadline is the deadline. The key
+         * of any other task is its submission time minus its priority multiplied by the aging
+         * quantum. So a task with high priority overtakes tasks which were submitted not much
+         * earlier, and a task with low priority still gets computed after the tasks submitted
+         * before it, because any task becomes older than new ones with time.
+         */
+        public @NotNull Builder priorityScheduling() {
+            isPriorityScheduling = true;
+            return this;
+        }
+
+        /**
+         * Sets the time by which one unit of priority moves a task ahead in the queue.
+         * It has to be positive and not greater than one second. It is 10 ms by default.
+         */
+        public @NotNull Builder agingQuantum(long time, @NotNull TimeUnit unit) {
+            long nanos = unit.toNanos(time);
+            if (nanos < 1 || nanos > MAX_AGING_QUANTUM_NANOS) {
+                throw new IllegalArgumentException();
+            }
+            agingQuantumNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Splits worker threads into given number of groups, and every group gets its own
+         * queue. Tasks submitted by a worker are added to the queue of its group, and tasks
+         * submitted by {@link ThreadPool#executeSharded} are added to the group chosen by
+         * their shard keys. A worker takes tasks from other groups only when the queue of its
+         * group is empty. So tasks and the data they share move between groups only under
+         * uneven load. Tasks are computed in the order they were submitted within a group.
+         * Workers are not bound to cores, so it is the operating system which keeps them
+         * close to their caches. The number of groups has to be positive, and it cannot be used
+         * together with priority scheduling.
+         */
+        public @NotNull Builder workerGroups(int numberOfGroups) {
+            if (numberOfGroups < 1) {
+                throw new IllegalArgumentException();
+            }
+            numberOfWorkerGroups = numberOfGroups;
+            return this;
+        }
+
+        /**
+         * Limits the number of tasks in the queue. When the queue is full, new tasks submitted
+         * by {@link ThreadPool#execute} and similar methods are handled according to the rejection
+         * policy. Tasks created by thenApply and similar methods are added to the queue
+         * when their parents are done even if the queue is full, because they were accepted
+         * earlier. The capacity has to be positive. By default the queue is unbounded.
+         */
+        public @NotNull Builder queueCapacity(int capacity,
+                                              @NotNull RejectionPolicy rejectionPolicy) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException();
+            }
+            queueCapacity = capacity;
+            this.rejectionPolicy = rejectionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the listener which is notified when the number of tasks in the queue rises to
+         * the high-water mark, and then when it falls to the low-water mark. So producers
+         * may throttle before the queue is full. The low-water mark must not be negative and
+         * has to be less than the high-water mark.
+         */
+        public @NotNull Builder highWaterMark(int highWaterMark, int lowWaterMark,
+                                              @NotNull QueueWatermarkListener listener) {
+            if (lowWaterMark < 0 || highWaterMark <= lowWaterMark) {
+                throw new IllegalArgumentException();
+            }
+            this.highWaterMark = highWaterMark;
+            this.lowWaterMark = lowWaterMark;
+            queueWatermarkListener = listener;
+            return this;
+        }
+
+        /**
+         * Creates a new ThreadPool.
+         * @throws IllegalStateException if both priority scheduling and worker groups are set
+         */
+        public @NotNull ThreadPool build() {
+            if (isPriorityScheduling && numberOfWorkerGroups != 0) {
+                throw new IllegalStateException();
+            }
+            TaskScheduler<Task<?>> taskScheduler;
+            if (numberOfWorkerGroups != 0) {
+                taskScheduler = new GroupedTaskScheduler<Task<?>>(numberOfWorkerGroups,
+                        (task) -> task.shardKey);
+            } else if (isPriorityScheduling) {
+                taskScheduler = new PriorityTaskScheduler<Task<?>>((task) -> task.schedulingKey);
+            } else {
+                taskScheduler = new FifoTaskScheduler<>();
+            }
+            return new ThreadPool(this, taskScheduler);
         }
     }
 
     private class Task<T> implements LightFuture<T>, Runnable {
         private volatile boolean isReady = false;
+        private boolean isCancelled = false;
+        /** Whether the task was added to the queue, so it may be run. */
+        private volatile boolean isQueued = false;
+        /**
+         * Whether some thread has started the task. Changed only under the lock of mutex,
+         * and read without it by workers which take the task from the queue.
+         */
+        private volatile boolean isStarted = false;
         private T result = null;
         private Throwable caughtThrowable = null;
+        /** Thread which is computing the task. Accessed only under the lock of mutex. */
+        private Thread runner = null;
         private final List<Task<?>> thenApplyTasksQueue = new ArrayList<>();
         private Supplier<? extends T> targetSupplier;
+        /** Value of {@link System#nanoTime} when the task was added to the queue. */
+        private long submissionTime;
+        private int priority = 0;
+        /** Key which chooses the group of workers for the task, or null. */
+        private Object shardKey = null;
+        private boolean hasDeadline = false;
+        /** Value of {@link System#nanoTime} after which the task is not started. */
+        private long deadline;
+        /** Tasks with smaller keys are computed first by priority scheduler. */
+        private long schedulingKey;
+        /** Whether the task is run by the thread which completed its parent. */
+        private final boolean isInline;
 
         private final Object mutex = new Object();
 
-        private Task(@NotNull Supplier<? extends T> targetSupplier) {
+        /**
+         * Creates a task which computes the result with given supplier. If supplier is null,
+         * the task is never run and it has to be completed with {@link #complete}.
+         */
+        private Task(@Nullable Supplier<? extends T> targetSupplier) {
+            this(targetSupplier, false);
+        }
+
+        private Task(@Nullable Supplier<? extends T> targetSupplier, boolean isInline) {
             this.targetSupplier = targetSupplier;
+            this.isInline = isInline;
         }
 
         /** {@inheritDoc} */
         @Override
         public void run() {
-            try {
-                result = targetSupplier.get();
-            } catch (Throwable throwable) {
-                caughtThrowable = throwable;
+            synchronized (mutex) {
+                // the task was cancelled or it was started by a joining thread
+                if (isReady || isStarted) {
+                    return;
+                }
+                isStarted = true;
+                runner = Thread.currentThread();
+            }
+
+            T computedResult = null;
+            Throwable throwable = null;
+            long startTime = System.nanoTime();
+            if (hasDeadline && startTime - deadline > 0) {
+                throwable = new TimeoutException();
+            } else {
+                try {
+                    computedResult = targetSupplier.get();
+                } catch (Throwable caught) {
+                    throwable = caught;
+                }
+                executionTime.record(System.nanoTime() - startTime);
             }
-            //prevents holding of LightFuture chain from thenApply method
-            targetSupplier = null;
-            isReady = true;
+            complete(computedResult, throwable, true);
+        }
 
+        /**
+         * Finishes the task with {@link TimeoutException} if its deadline has passed and
+         * it is not started yet. Dependent tasks are released by the current thread.
+         */
+        private void checkDeadline() {
+            if (!hasDeadline || isReady || System.nanoTime() - deadline <= 0) {
+                return;
+            }
             synchronized (mutex) {
+                if (isReady || isStarted) {
+                    return;
+                }
+                // the task is never run after that
+                isStarted = true;
+            }
+            complete(null, new TimeoutException(), true);
+        }
+
+        /**
+         * Returns the time left until the deadline of a task which is not started,
+         * or {@link Long#MAX_VALUE} if the task cannot time out. Called under the lock of mutex.
+         */
+        private long getNanosToDeadline() {
+            if (!hasDeadline || isStarted) {
+                return Long.MAX_VALUE;
+            }
+            return Math.max(0, deadline - System.nanoTime());
+        }
+
+        /** Cancels the task without interrupting the thread which may be computing it. */
+        private void cancel() {
+            cancel(false);
+        }
+
+        /**
+         * Cancels the task which was removed from the queue unless some thread has started it.
+         * @return whether the task was cancelled
+         */
+        private boolean cancelQueued() {
+            synchronized (mutex) {
+                if (isReady || isStarted) {
+                    return false;
+                }
+                setResult(null, new CancellationException(), true, false);
+            }
+            cancelDependentTasks();
+            return true;
+        }
+
+        /**
+         * Completes all dependent tasks of this cancelled task except inline ones with
+         * {@link CancellationException}, and then does the same to their dependent tasks
+         * without recursion. Inline tasks are released.
+         */
+        private void cancelDependentTasks() {
+            var cancelledTasks = new ArrayDeque<Task<?>>();
+            int workerIndex = currentWorkerIndex();
+            for (Task<?> task = this; task != null; task = cancelledTasks.poll()) {
+                numberOfPendingContinuations.add(-task.thenApplyTasksQueue.size());
+                for (var dependentTask : task.thenApplyTasksQueue) {
+                    if (dependentTask.isInline) {
+                        releaseTask(dependentTask, workerIndex);
+                    } else if (dependentTask.setResult(null, new CancellationException(),
+                            true, false)) {
+                        cancelledTasks.add(dependentTask);
+                    }
+                }
+            }
+        }
+
+        private void setSubmissionTime(long submissionTime) {
+            this.submissionTime = submissionTime;
+            schedulingKey = hasDeadline ? deadline : submissionTime - priority * agingQuantumNanos;
+        }
+
+        /**
+         * Sets the result of the task and adds all dependent tasks to the ThreadPool
+         * unless the task is already done.
+         */
+        private void complete(@Nullable T computedResult, @Nullable Throwable throwable) {
+            complete(computedResult, throwable, false);
+        }
+
+        /**
+         * Sets the result of the task and adds all dependent tasks to the ThreadPool
+         * unless the task is already done (for example, cancelled while it was computed).
+         * @param isComputed whether the result is the outcome of the task, which is counted
+         * as a completed or failed task if the result is set
+         * @return whether the result was set
+         */
+        private boolean complete(@Nullable T computedResult, @Nullable Throwable throwable,
+                                 boolean isComputed) {
+            if (!setResult(computedResult, throwable, false, isComputed)) {
+                return false;
+            }
+            // no task can be added to the queue after isReady is set and mutex is released
+            numberOfPendingContinuations.add(-thenApplyTasksQueue.size());
+            int workerIndex = currentWorkerIndex();
+            for (var task : thenApplyTasksQueue) {
+                releaseTask(task, workerIndex);
+            }
+            return true;
+        }
+
+        /**
+         * Sets the result of the task and wakes up waiting threads unless the task is
+         * already done. Dependent tasks are not released.
+         * @param isComputed whether the result is counted as a completed or failed task;
+         * it is counted before waiting threads are woken up
+         * @return whether the result was set
+         */
+        private boolean setResult(@Nullable T computedResult, @Nullable Throwable throwable,
+                                  boolean isCancelled, boolean isComputed) {
+            synchronized (mutex) {
+                if (isReady) {
+                    return false;
+                }
+                if (isComputed) {
+                    if (throwable == null) {
+                        numberOfCompletedTasks.increment();
+                    } else {
+                        numberOfFailedTasks.increment();
+                    }
+                }
+                result = computedResult;
+                caughtThrowable = throwable;
+                this.isCancelled = isCancelled;
+                //prevents holding of LightFuture chain from thenApply method
+                targetSupplier = null;
+                runner = null;
+                isReady = true;
                 mutex.notifyAll();
-                thenApplyTasksQueue.forEach(taskQueue::put);
             }
+            return true;
         }
 
         /** {@inheritDoc} */
         @Override
         public boolean isReady() {
+            checkDeadline();
             return isReady;
         }
 
         /** {@inheritDoc} */
         @Override
         public T get() throws InterruptedException, LightExecutionException {
-            synchronized (mutex) {
-                while (!isReady) {
-                    mutex.wait();
-                }
+            awaitReady();
+            if (caughtThrowable != null) {
+                throw new LightExecutionException(caughtThrowable);
+            }
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public T get(long timeout, @NotNull TimeUnit unit)
+                throws InterruptedException, LightExecutionException, TimeoutException {
+            if (!awaitReady(unit.toNanos(timeout))) {
+                throw new TimeoutException();
             }
             if (caughtThrowable != null) {
                 throw new LightExecutionException(caughtThrowable);
@@ -122,43 +1267,238 @@ public class ThreadPool {
 
         /** {@inheritDoc} */
         @Override
-        public <S> LightFuture<S> thenApply(@NotNull Function<? super T, ? extends S> function) {
-            if (isShutdown) {
-                throw new IllegalStateException();
+        public T join() throws InterruptedException, LightExecutionException {
+            if (isQueued && !isReady && currentWorkerIndex() != TaskScheduler.EXTERNAL_THREAD) {
+                // does nothing if some other thread has already started the task
+                run();
+                // clears the interrupt which could have been sent by cancel of the task
+                Thread.interrupted();
+            }
+            return get();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (mutex) {
+                if (isReady) {
+                    return false;
+                }
+                // the runner cannot finish the task while the lock is held
+                if (mayInterruptIfRunning && runner != null) {
+                    runner.interrupt();
+                }
+                setResult(null, new CancellationException(), true, false);
             }
+            cancelDependentTasks();
+            return true;
+        }
 
-            var task = new Task<S>(() -> {
+        /** {@inheritDoc} */
+        @Override
+        public boolean isCancelled() {
+            return isReady && isCancelled;
+        }
+
+        /** Waits until the task is done. The task is finished when its deadline passes. */
+        private void awaitReady() throws InterruptedException {
+            awaitReady(Long.MAX_VALUE);
+        }
+
+        /**
+         * Waits until the task is done at most given number of nanoseconds. The task
+         * is finished when its deadline passes.
+         * @return whether the task is done
+         */
+        private boolean awaitReady(long timeoutNanos) throws InterruptedException {
+            long remainingNanos = timeoutNanos;
+            while (true) {
+                // dependent tasks must not be released under the lock
+                checkDeadline();
+                synchronized (mutex) {
+                    if (isReady) {
+                        return true;
+                    }
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    long waitNanos = Math.min(remainingNanos, getNanosToDeadline());
+                    if (waitNanos == Long.MAX_VALUE) {
+                        mutex.wait();
+                    } else if (waitNanos > 0) {
+                        long startTime = System.nanoTime();
+                        TimeUnit.NANOSECONDS.timedWait(mutex, waitNanos);
+                        if (remainingNanos != Long.MAX_VALUE) {
+                            remainingNanos -= System.nanoTime() - startTime;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public <S> LightFuture<S> thenApply(@NotNull Function<? super T, ? extends S> function) {
+            return addDependentTask(() -> {
                 if (caughtThrowable != null) {
                     throw new RuntimeException(caughtThrowable);
                 }
                 return function.apply(result);
             });
+        }
 
-            synchronized (mutex) {
-                if (isReady) {
-                    taskQueue.put(task);
-                } else {
-                    thenApplyTasksQueue.add(task);
+        /** {@inheritDoc} */
+        @Override
+        public <S> LightFuture<S> thenApplySync(
+                @NotNull Function<? super T, ? extends S> function) {
+            return addDependentTask(() -> {
+                if (caughtThrowable != null) {
+                    throw new RuntimeException(caughtThrowable);
                 }
-            }
+                return function.apply(result);
+            }, true);
+        }
 
-            return task;
+        /** {@inheritDoc} */
+        @Override
+        public LightFuture<Void> thenAccept(@NotNull Consumer<? super T> consumer) {
+            return thenApply((value) -> {
+                consumer.accept(value);
+                return null;
+            });
         }
-    }
 
-    private static class BlockingQueue<T> {
-        private Queue<T> queue = new LinkedList<>();
+        /** {@inheritDoc} */
+        @Override
+        public <S> LightFuture<S> thenCompose(
+                @NotNull Function<? super T, ? extends LightFuture<S>> function) {
+            var composedTask = new Task<S>(null);
+            var composingTask = addDependentTask(() -> {
+                try {
+                    if (caughtThrowable != null) {
+                        throw new RuntimeException(caughtThrowable);
+                    }
+                    var future = function.apply(result);
+                    if (!(future instanceof Task)) {
+                        throw new IllegalArgumentException();
+                    }
 
-        private synchronized void put(@Nullable T value) {
-            queue.offer(value);
-            notify();
+                    @SuppressWarnings("unchecked")
+                    var innerTask = (Task<S>) future;
+                    // not rejected even if the ThreadPool of the inner task is shut down
+                    innerTask.addDependentTask(new Task<>(() -> {
+                        if (innerTask.isCancelled) {
+                            composedTask.cancel();
+                        } else {
+                            composedTask.complete(innerTask.result, innerTask.caughtThrowable);
+                        }
+                        return null;
+                    }, true));
+                } catch (Throwable throwable) {
+                    composedTask.complete(null, throwable);
+                }
+                return null;
+            });
+            // the composing task is not run at all if it is cancelled
+            composingTask.addDependentTask(new Task<>(() -> {
+                if (composingTask.isCancelled) {
+                    composedTask.cancel();
+                }
+                return null;
+            }, true));
+            return composedTask;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public <U, S> LightFuture<S> thenCombine(
+                @NotNull LightFuture<? extends U> other,
+                @NotNull BiFunction<? super T, ? super U, ? extends S> function) {
+            return thenCompose((value) -> other.thenApply(
+                    (otherValue) -> function.apply(value, otherValue)));
         }
 
-        private synchronized T take() throws InterruptedException {
-            while (queue.size() == 0) {
-                wait();
+        /** {@inheritDoc} */
+        @Override
+        public LightFuture<T> whenComplete(
+                @NotNull BiConsumer<? super T, ? super Throwable> action) {
+            // the result is set directly, so that the exception is passed without wrapping
+            var resultTask = new Task<T>(null);
+            var actionTask = addDependentTask(() -> {
+                try {
+                    action.accept(result, caughtThrowable);
+                } catch (Throwable throwable) {
+                    resultTask.complete(null, throwable);
+                    return null;
+                }
+                resultTask.complete(result, caughtThrowable);
+                return null;
+            });
+            // the action task is not run at all if it is cancelled
+            actionTask.addDependentTask(new Task<>(() -> {
+                if (actionTask.isCancelled) {
+                    resultTask.cancel();
+                }
+                return null;
+            }, true));
+            return resultTask;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public LightFuture<T> exceptionally(
+                @NotNull Function<? super Throwable, ? extends T> function) {
+            return addDependentTask(() -> {
+                if (caughtThrowable != null) {
+                    return function.apply(caughtThrowable);
+                }
+                return result;
+            });
+        }
+
+        private <S> Task<S> addDependentTask(@NotNull Supplier<? extends S> supplier) {
+            return addDependentTask(supplier, false);
+        }
+
+        /**
+         * Creates a task which computes supplier after this task is done.
+         * After a shutdown only worker threads of the ThreadPool can create such tasks.
+         * @param isInline whether the new task is run by the thread which releases it instead
+         * of being added to the ThreadPool
+         */
+        private <S> Task<S> addDependentTask(@NotNull Supplier<? extends S> supplier,
+                                             boolean isInline) {
+            if (isShutdown && currentWorkerIndex() == TaskScheduler.EXTERNAL_THREAD) {
+                numberOfRejectedTasks.increment();
+                throw new IllegalStateException();
+            }
+
+            var task = new Task<S>(supplier, isInline);
+            task.priority = priority;
+            task.shardKey = shardKey;
+            addDependentTask(task);
+            return task;
+        }
+
+        /**
+         * Releases the task after this task is done. The task is released right away if this
+         * task is ready, otherwise it is stored in {@link #thenApplyTasksQueue} and does not
+         * occupy a thread until then.
+         */
+        private void addDependentTask(@NotNull Task<?> task) {
+            numberOfContinuations.increment();
+            synchronized (mutex) {
+                if (!isReady) {
+                    numberOfPendingContinuations.increment();
+                    thenApplyTasksQueue.add(task);
+                    return;
+                }
+            }
+            if (isCancelled && !task.isInline) {
+                task.cancel();
+            } else {
+                releaseTask(task, currentWorkerIndex());
             }
-            return queue.poll();
         }
     }
 }
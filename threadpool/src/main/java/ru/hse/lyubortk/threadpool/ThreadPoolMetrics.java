@@ -0,0 +1,150 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A snapshot of {@link ThreadPool} metrics. Metrics are collected all the time and are
+ * not synchronized with each other, so values taken under load may be slightly inconsistent.
+ * Counters include only the tasks added since the creation of the ThreadPool.
+ */
+public class ThreadPoolMetrics {
+    private final int queueDepth;
+    private final int numberOfActiveThreads;
+    private final int numberOfIdleThreads;
+    private final long numberOfCompletedTasks;
+    private final long numberOfFailedTasks;
+    private final long numberOfRejectedTasks;
+    private final long numberOfContinuations;
+    private final long numberOfPendingContinuations;
+    private final Histogram queueWaitTime;
+    private final Histogram executionTime;
+
+    ThreadPoolMetrics(int queueDepth, int numberOfActiveThreads, int numberOfIdleThreads,
+                      long numberOfCompletedTasks, long numberOfFailedTasks,
+                      long numberOfRejectedTasks, long numberOfContinuations,
+                      long numberOfPendingContinuations, @NotNull Histogram queueWaitTime,
+                      @NotNull Histogram executionTime) {
+        this.queueDepth = queueDepth;
+        this.numberOfActiveThreads = numberOfActiveThreads;
+        this.numberOfIdleThreads = numberOfIdleThreads;
+        this.numberOfCompletedTasks = numberOfCompletedTasks;
+        this.numberOfFailedTasks = numberOfFailedTasks;
+        this.numberOfRejectedTasks = numberOfRejectedTasks;
+        this.numberOfContinuations = numberOfContinuations;
+        this.numberOfPendingContinuations = numberOfPendingContinuations;
+        this.queueWaitTime = queueWaitTime;
+        this.executionTime = executionTime;
+    }
+
+    /** Returns the number of tasks which wait in the queue. */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /** Returns the number of worker threads which are computing tasks. */
+    public int getNumberOfActiveThreads() {
+        return numberOfActiveThreads;
+    }
+
+    /** Returns the number of worker threads which are waiting for tasks. */
+    public int getNumberOfIdleThreads() {
+        return numberOfIdleThreads;
+    }
+
+    /** Returns the number of tasks which were computed without an exception. */
+    public long getNumberOfCompletedTasks() {
+        return numberOfCompletedTasks;
+    }
+
+    /**
+     * Returns the number of tasks which finished with an exception, including tasks which
+     * were not started before their deadlines and thenApply tasks of failed tasks.
+     */
+    public long getNumberOfFailedTasks() {
+        return numberOfFailedTasks;
+    }
+
+    /** Returns the number of tasks which were not accepted by the ThreadPool. */
+    public long getNumberOfRejectedTasks() {
+        return numberOfRejectedTasks;
+    }
+
+    /**
+     * Returns the number of tasks created by thenApply and similar methods of
+     * {@link LightFuture}.
+     */
+    public long getNumberOfContinuations() {
+        return numberOfContinuations;
+    }
+
+    /**
+     * Returns the number of tasks created by thenApply and similar methods which still
+     * wait for their parent tasks.
+     */
+    public long getNumberOfPendingContinuations() {
+        return numberOfPendingContinuations;
+    }
+
+    /** Returns the histogram of times in nanoseconds tasks waited in the queue. */
+    public @NotNull Histogram getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    /** Returns the histogram of times in nanoseconds tasks were computed. */
+    public @NotNull Histogram getExecutionTime() {
+        return executionTime;
+    }
+
+    /**
+     * A snapshot of a histogram of recorded values. Values are stored with relative
+     * error less than 1/16.
+     */
+    public static class Histogram {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Histogram(@NotNull long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /** Returns the number of recorded values. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Returns the exact maximum of recorded values or zero if there are no values. */
+        public long getMax() {
+            return max;
+        }
+
+        /** Returns the exact mean of recorded values or zero if there are no values. */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns an upper estimate of the value which is not less than given percentage
+         * of recorded values, or zero if there are no values.
+         * @param percentile number from 0 to 100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException();
+            }
+            long countAtPercentile = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long currentCount = 0;
+            for (int i = 0; i < counts.length; i++) {
+                currentCount += counts[i];
+                if (currentCount >= countAtPercentile) {
+                    return Math.min(ConcurrentHistogram.getBucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
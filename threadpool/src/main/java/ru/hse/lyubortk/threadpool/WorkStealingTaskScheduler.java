@@ -0,0 +1,178 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scheduler which keeps a separate deque for every worker. Tasks submitted by a worker
+ * are added to its own deque and are taken by this worker in LIFO order. Tasks submitted
+ * by other threads are added to the shared external queue. A worker with empty deque
+ * takes tasks from the external queue and then steals the oldest tasks from other workers.
+ */
+class WorkStealingTaskScheduler<T> implements TaskScheduler<T> {
+    private final ArrayDeque<T>[] localDeques;
+    private final ArrayDeque<T> externalQueue = new ArrayDeque<>();
+
+    /** Number of tasks stored in all deques. May be greater than actual number for a short time. */
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final Object idleMonitor = new Object();
+    /** Number of workers waiting on {@link #idleMonitor}. Modified only under its lock. */
+    private volatile int idleWorkers = 0;
+
+    WorkStealingTaskScheduler(int numberOfWorkers) {
+        // arrays of a generic type cannot be created, and every element is created below
+        @SuppressWarnings("unchecked")
+        var deques = (ArrayDeque<T>[]) new ArrayDeque<?>[numberOfWorkers];
+        localDeques = deques;
+        for (int i = 0; i < numberOfWorkers; i++) {
+            localDeques[i] = new ArrayDeque<>();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void put(@NotNull T task, int workerIndex) {
+        var deque = workerIndex == EXTERNAL_THREAD ? externalQueue : localDeques[workerIndex];
+        // counter is incremented first so that no worker can fall asleep while task is in a deque
+        pendingTasks.incrementAndGet();
+        synchronized (deque) {
+            deque.addLast(task);
+        }
+        if (idleWorkers > 0) {
+            synchronized (idleMonitor) {
+                idleMonitor.notify();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void putAll(@NotNull List<? extends T> tasks, int workerIndex) {
+        var deque = workerIndex == EXTERNAL_THREAD ? externalQueue : localDeques[workerIndex];
+        pendingTasks.addAndGet(tasks.size());
+        synchronized (deque) {
+            deque.addAll(tasks);
+        }
+        if (idleWorkers > 0) {
+            synchronized (idleMonitor) {
+                for (int i = Math.min(tasks.size(), idleWorkers); i > 0; i--) {
+                    idleMonitor.notify();
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @NotNull T take(int workerIndex) throws InterruptedException {
+        while (true) {
+            T task = poll(workerIndex);
+            if (task != null) {
+                return task;
+            }
+
+            synchronized (idleMonitor) {
+                idleWorkers++;
+                try {
+                    while (pendingTasks.get() == 0) {
+                        idleMonitor.wait();
+                    }
+                } finally {
+                    idleWorkers--;
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex) {
+        T task = null;
+        if (workerIndex != EXTERNAL_THREAD) {
+            task = pollLast(localDeques[workerIndex]);
+        }
+        if (task == null) {
+            task = pollFirst(externalQueue);
+        }
+        if (task == null) {
+            task = steal(workerIndex);
+        }
+        if (task != null) {
+            pendingTasks.decrementAndGet();
+        }
+        return task;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Tasks of the external queue are the oldest ones, and then the oldest tasks of local
+     * deques are taken, the same way they are stolen.
+     */
+    @Override
+    public @Nullable T evict() {
+        return poll(EXTERNAL_THREAD);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public @Nullable T poll(int workerIndex, long timeoutNanos) throws InterruptedException {
+        long remainingNanos = timeoutNanos;
+        while (true) {
+            T task = poll(workerIndex);
+            if (task != null || remainingNanos <= 0) {
+                return task;
+            }
+
+            long startTime = System.nanoTime();
+            synchronized (idleMonitor) {
+                idleWorkers++;
+                try {
+                    if (pendingTasks.get() == 0) {
+                        TimeUnit.NANOSECONDS.timedWait(idleMonitor, remainingNanos);
+                    }
+                } finally {
+                    idleWorkers--;
+                }
+            }
+            remainingNanos -= System.nanoTime() - startTime;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return pendingTasks.get();
+    }
+
+    /** Polls tasks of other workers. Thief index may be {@link #EXTERNAL_THREAD}. */
+    private @Nullable T steal(int thiefIndex) {
+        for (int i = 1; i <= localDeques.length; i++) {
+            int victimIndex = (thiefIndex + i) % localDeques.length;
+            if (victimIndex == thiefIndex) {
+                continue;
+            }
+            T task = pollFirst(localDeques[victimIndex]);
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private @Nullable T pollFirst(@NotNull ArrayDeque<T> deque) {
+        synchronized (deque) {
+            return deque.pollFirst();
+        }
+    }
+
+    private @Nullable T pollLast(@NotNull ArrayDeque<T> deque) {
+        synchronized (deque) {
+            return deque.pollLast();
+        }
+    }
+}
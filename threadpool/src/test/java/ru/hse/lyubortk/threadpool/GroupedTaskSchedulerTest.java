@@ -0,0 +1,90 @@
+package ru.hse.lyubortk.threadpool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupedTaskSchedulerTest {
+    /** Non-negative tasks are their own shard keys, negative tasks have no shard keys. */
+    private final GroupedTaskScheduler<Integer> scheduler =
+            new GroupedTaskScheduler<>(2, (task) -> task >= 0 ? task : null);
+
+    @Test
+    void testShardedTasksGoToTheirGroups() {
+        for (int task : new int[] {0, 1, 2, 3}) {
+            scheduler.put(task, TaskScheduler.EXTERNAL_THREAD);
+        }
+        assertEquals(Integer.valueOf(0), scheduler.poll(0));
+        assertEquals(Integer.valueOf(1), scheduler.poll(1));
+        assertEquals(Integer.valueOf(2), scheduler.poll(2));
+        assertEquals(Integer.valueOf(3), scheduler.poll(3));
+        assertNull(scheduler.poll(0));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void testWorkerTakesTasksOfOtherGroupsWhenItsQueueIsEmpty() {
+        scheduler.put(1, TaskScheduler.EXTERNAL_THREAD);
+        scheduler.put(0, TaskScheduler.EXTERNAL_THREAD);
+        scheduler.put(3, TaskScheduler.EXTERNAL_THREAD);
+        assertEquals(Integer.valueOf(0), scheduler.poll(0));
+        assertEquals(Integer.valueOf(1), scheduler.poll(0));
+        assertEquals(Integer.valueOf(3), scheduler.poll(0));
+    }
+
+    @Test
+    void testTasksWithoutShardKeys() {
+        scheduler.put(-1, 1);
+        scheduler.put(-2, 3);
+        scheduler.put(-3, 0);
+        assertEquals(Integer.valueOf(-1), scheduler.poll(1));
+        assertEquals(Integer.valueOf(-2), scheduler.poll(1));
+        assertEquals(Integer.valueOf(-3), scheduler.poll(1));
+
+        // tasks of external threads are spread over the groups
+        scheduler.put(-4, TaskScheduler.EXTERNAL_THREAD);
+        scheduler.put(-5, TaskScheduler.EXTERNAL_THREAD);
+        var task = scheduler.poll(1);
+        assertNotNull(task);
+        assertEquals(Integer.valueOf(-9 - task), scheduler.poll(0));
+    }
+
+    @Test
+    void testIdleWorkerOfOtherGroupIsWokenUp() throws Exception {
+        var takenTask = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.take(1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        var polledTask = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.poll(3, TimeUnit.SECONDS.toNanos(10));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        scheduler.putAll(List.of(0, 2), TaskScheduler.EXTERNAL_THREAD);
+        assertEquals(2, takenTask.get(10, TimeUnit.SECONDS) + polledTask.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testEvictTakesOldestTaskOfLongestGroup() {
+        scheduler.put(0, TaskScheduler.EXTERNAL_THREAD);
+        scheduler.put(1, TaskScheduler.EXTERNAL_THREAD);
+        scheduler.put(3, TaskScheduler.EXTERNAL_THREAD);
+        scheduler.put(5, TaskScheduler.EXTERNAL_THREAD);
+        assertEquals(Integer.valueOf(1), scheduler.evict());
+        assertEquals(Integer.valueOf(3), scheduler.evict());
+        // both groups have one task now
+        assertNotNull(scheduler.evict());
+        assertNotNull(scheduler.evict());
+        assertNull(scheduler.evict());
+        assertEquals(0, scheduler.size());
+    }
+}
\ No newline at end of file
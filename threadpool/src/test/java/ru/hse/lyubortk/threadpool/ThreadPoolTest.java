@@ -2,11 +2,19 @@ package ru.hse.lyubortk.threadpool;
 
 import org.junit.jupiter.api.RepeatedTest;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -31,7 +39,7 @@ class ThreadPoolTest {
         }
         Thread.sleep(300);
         assertEquals(BASE_THREAD_POOL_SIZE, value.get());
-        threadPool.shutdown();
+        threadPool.shutdownNow();
     }
 
     @RepeatedTest(REPEATED_TEST_NUMBER)
@@ -189,4 +197,1195 @@ class ThreadPoolTest {
         assertThrows(IllegalStateException.class, () -> lightFuture.thenApply((a) -> a));
 
     }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testWorkStealingExecuteManyTasks() throws LightExecutionException, InterruptedException {
+        final int numberOfTasks = BASE_THREAD_POOL_SIZE * 30;
+        var workStealingPool = ThreadPool.newWorkStealingPool(BASE_THREAD_POOL_SIZE);
+        var lightFutureList = new ArrayList<LightFuture<Integer>>();
+
+        for (int i = 0; i < numberOfTasks; i++) {
+            int k = i;
+            lightFutureList.add(workStealingPool.execute(() -> k).thenApply((a) -> a * 2));
+        }
+
+        for (int i = 0; i < numberOfTasks; i++) {
+            assertEquals(i * 2, (int)lightFutureList.get(i).get());
+        }
+        workStealingPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testWorkStealingTasksSubmittedFromWorkers() throws LightExecutionException,
+            InterruptedException {
+        var workStealingPool = ThreadPool.newWorkStealingPool(4);
+        var value = new AtomicInteger(0);
+        var latch = new CountDownLatch(100);
+
+        workStealingPool.execute(() -> {
+            for (int i = 0; i < 100; i++) {
+                workStealingPool.execute(() -> {
+                    value.incrementAndGet();
+                    latch.countDown();
+                    return null;
+                });
+            }
+            return null;
+        }).get();
+
+        latch.await();
+        assertEquals(100, value.get());
+        workStealingPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testWorkStealingNumberOfThreads() throws InterruptedException {
+        var workStealingPool = ThreadPool.newWorkStealingPool(BASE_THREAD_POOL_SIZE);
+        var value = new AtomicInteger(0);
+        workStealingPool.execute(() -> {
+            for (int i = 0; i < BASE_THREAD_POOL_SIZE * 10; i++) {
+                workStealingPool.execute(() -> {
+                    value.incrementAndGet();
+                    try {
+                        Thread.sleep(Long.MAX_VALUE);
+                    } catch (InterruptedException ignored) {
+                    }
+                    return null;
+                });
+            }
+            return null;
+        });
+        Thread.sleep(300);
+        assertEquals(BASE_THREAD_POOL_SIZE, value.get());
+        workStealingPool.shutdownNow();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testLockFreeExecuteManyTasks() throws LightExecutionException, InterruptedException {
+        final int numberOfTasks = BASE_THREAD_POOL_SIZE * 30;
+        var lockFreePool = ThreadPool.newLockFreePool(BASE_THREAD_POOL_SIZE, 16);
+        var lightFutureList = new ArrayList<LightFuture<Integer>>();
+
+        for (int i = 0; i < numberOfTasks; i++) {
+            int k = i;
+            lightFutureList.add(lockFreePool.execute(() -> k).thenApply((a) -> a * 2));
+        }
+
+        for (int i = 0; i < numberOfTasks; i++) {
+            assertEquals(i * 2, (int)lightFutureList.get(i).get());
+        }
+        lockFreePool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testLockFreeOrderOfTasks() throws LightExecutionException, InterruptedException {
+        var lastValue = new AtomicInteger(-1);
+        var lockFreePool = ThreadPool.newLockFreePool(1, 4);
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+
+        for (int i = 0; i < 30; i++) {
+            int k = i;
+            lightFutureList.add(lockFreePool.execute(() -> {
+                assertEquals(k - 1, lastValue.get());
+                lastValue.incrementAndGet();
+                return null;
+            }));
+        }
+
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        lockFreePool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenAccept() throws LightExecutionException, InterruptedException {
+        var value = new AtomicInteger(0);
+        var lightFuture = threadPool.execute(() -> 42).thenAccept(value::set);
+        assertNull(lightFuture.get());
+        assertEquals(42, value.get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenCompose() throws LightExecutionException, InterruptedException {
+        var lightFuture = threadPool.execute(() -> 20)
+                .thenCompose((a) -> threadPool.execute(() -> a + 1))
+                .thenApply((a) -> a * 2);
+        assertEquals(42, (int)lightFuture.get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenComposeDoesNotOccupyThreads() throws LightExecutionException,
+            InterruptedException {
+        var currentThreadPool = new ThreadPool(1);
+        var lightFuture = currentThreadPool.execute(() -> 0);
+        for (int i = 0; i < 100; i++) {
+            lightFuture = lightFuture.thenCompose((a) -> currentThreadPool.execute(() -> a + 1));
+        }
+        assertEquals(100, (int)lightFuture.get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenComposeLightExecutionException() {
+        var lightFuture = threadPool.execute(() -> 1).thenCompose((a) -> threadPool.execute(() -> {
+            throw new IllegalArgumentException();
+        }));
+        var exception = assertThrows(LightExecutionException.class, lightFuture::get);
+        assertEquals(IllegalArgumentException.class, exception.getCause().getClass());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenCombine() throws LightExecutionException, InterruptedException {
+        var first = threadPool.execute(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            return "a";
+        });
+        var second = threadPool.execute(() -> 1);
+        assertEquals("a1", first.thenCombine(second, (a, b) -> a + b).get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testWhenComplete() throws LightExecutionException, InterruptedException {
+        var caughtThrowable = new AtomicReference<Throwable>();
+        var failedFuture = threadPool.<Integer>execute(() -> {
+            throw new IllegalArgumentException();
+        }).whenComplete((result, throwable) -> caughtThrowable.set(throwable));
+        var exception = assertThrows(LightExecutionException.class, failedFuture::get);
+        assertEquals(IllegalArgumentException.class, caughtThrowable.get().getClass());
+        assertSame(caughtThrowable.get(), exception.getCause());
+
+        var actionFuture = threadPool.execute(() -> 5).whenComplete((result, throwable) -> {
+            throw new IllegalStateException();
+        });
+        exception = assertThrows(LightExecutionException.class, actionFuture::get);
+        assertEquals(IllegalStateException.class, exception.getCause().getClass());
+
+        var value = new AtomicInteger(0);
+        var lightFuture = threadPool.execute(() -> 5).whenComplete((result, throwable) -> {
+            assertNull(throwable);
+            value.set(result);
+        });
+        assertEquals(5, (int)lightFuture.get());
+        assertEquals(5, value.get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExceptionally() throws LightExecutionException, InterruptedException {
+        var lightFuture = threadPool.<String>execute(() -> {
+            throw new IllegalArgumentException();
+        }).exceptionally((throwable) -> throwable.getClass().getSimpleName());
+        assertEquals("IllegalArgumentException", lightFuture.get());
+        assertEquals("test", threadPool.execute(() -> "test").exceptionally((a) -> "fail").get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenApplySyncLongChain() throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        LightFuture<Integer> lightFuture = threadPool.execute(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return 0;
+        });
+        var first = lightFuture;
+        for (int i = 0; i < 100_000; i++) {
+            lightFuture = lightFuture.thenApplySync((a) -> a + 1);
+        }
+        start.countDown();
+        assertEquals(100_000, (int)lightFuture.get());
+        assertEquals(0, (int)first.get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenApplySyncRunsOnCompletingThread() throws LightExecutionException,
+            InterruptedException {
+        var start = new CountDownLatch(1);
+        var parentThread = new AtomicReference<Thread>();
+        var lightFuture = threadPool.execute(() -> {
+            parentThread.set(Thread.currentThread());
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        }).thenApplySync((a) -> Thread.currentThread());
+        start.countDown();
+        var childThread = lightFuture.get();
+        assertSame(parentThread.get(), childThread);
+
+        var readyFuture = threadPool.execute(() -> 1);
+        readyFuture.get();
+        assertSame(Thread.currentThread(),
+                readyFuture.thenApplySync((a) -> Thread.currentThread()).get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThenApplySyncLightExecutionException() {
+        var lightFuture = threadPool.execute(() -> {
+            throw new IllegalArgumentException();
+        }).thenApplySync((a) -> a);
+        assertThrows(LightExecutionException.class, lightFuture::get);
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExecuteAll() throws LightExecutionException, InterruptedException {
+        final int numberOfTasks = BASE_THREAD_POOL_SIZE * 30;
+        for (var currentThreadPool : List.of(threadPool,
+                ThreadPool.newWorkStealingPool(BASE_THREAD_POOL_SIZE),
+                ThreadPool.newLockFreePool(BASE_THREAD_POOL_SIZE, 64))) {
+            var suppliers = new ArrayList<Supplier<Integer>>();
+            for (int i = 0; i < numberOfTasks; i++) {
+                int k = i;
+                suppliers.add(() -> k);
+            }
+
+            var lightFutureList = currentThreadPool.executeAll(suppliers);
+            assertEquals(numberOfTasks, lightFutureList.size());
+            for (int i = 0; i < numberOfTasks; i++) {
+                assertEquals(i, (int)lightFutureList.get(i).get());
+            }
+            currentThreadPool.shutdown();
+        }
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExecuteAllOrderOfTasks() throws LightExecutionException, InterruptedException {
+        var lastValue = new AtomicInteger(-1);
+        var currentThreadPool = new ThreadPool(1);
+        var suppliers = new ArrayList<Supplier<Object>>();
+        for (int i = 0; i < 30; i++) {
+            int k = i;
+            suppliers.add(() -> {
+                assertEquals(k - 1, lastValue.get());
+                lastValue.incrementAndGet();
+                return null;
+            });
+        }
+
+        for (var lightFuture : currentThreadPool.executeAll(suppliers)) {
+            lightFuture.get();
+        }
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testInvokeAll() throws LightExecutionException, InterruptedException {
+        var suppliers = new ArrayList<Supplier<Integer>>();
+        for (int i = 0; i < BASE_THREAD_POOL_SIZE * 2; i++) {
+            int k = i;
+            suppliers.add(() -> {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) {
+                }
+                if (k == 0) {
+                    throw new IllegalArgumentException();
+                }
+                return k;
+            });
+        }
+
+        var lightFutureList = threadPool.invokeAll(suppliers);
+        for (var lightFuture : lightFutureList) {
+            assertTrue(lightFuture.isReady());
+        }
+        assertThrows(LightExecutionException.class, lightFutureList.get(0)::get);
+        assertEquals(1, (int)lightFutureList.get(1).get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThreadPerTaskBlockingTasksDoNotStarve() throws LightExecutionException,
+            InterruptedException {
+        var threadPerTaskPool = ThreadPool.newThreadPerTaskPool(1000);
+        var suppliers = new ArrayList<Supplier<Integer>>();
+        for (int i = 0; i < 500; i++) {
+            int k = i;
+            suppliers.add(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException ignored) {
+                }
+                return k;
+            });
+        }
+
+        long start = System.nanoTime();
+        var lightFutureList = threadPerTaskPool.executeAll(suppliers);
+        for (int i = 0; i < lightFutureList.size(); i++) {
+            assertEquals(i, (int)lightFutureList.get(i).get());
+        }
+        assertTrue(System.nanoTime() - start < 3_000_000_000L);
+        threadPerTaskPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testThreadPerTaskConcurrencyLimit() throws LightExecutionException,
+            InterruptedException {
+        final int maxConcurrency = 5;
+        var threadPerTaskPool = ThreadPool.newThreadPerTaskPool(maxConcurrency);
+        var running = new AtomicInteger(0);
+        var maxRunning = new AtomicInteger(0);
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int i = 0; i < 50; i++) {
+            lightFutureList.add(threadPerTaskPool.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) {
+                }
+                running.decrementAndGet();
+                return null;
+            }).thenApply((a) -> a));
+        }
+
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        assertTrue(maxRunning.get() <= maxConcurrency);
+        threadPerTaskPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testElasticPoolGrowsAndShrinks() throws LightExecutionException, InterruptedException {
+        var elasticPool = ThreadPool.builder()
+                .threads(2, 10)
+                .keepAlive(100, TimeUnit.MILLISECONDS)
+                .build();
+        assertEquals(2, elasticPool.getNumberOfThreads());
+
+        var start = new CountDownLatch(1);
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int i = 0; i < 30; i++) {
+            lightFutureList.add(elasticPool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                return null;
+            }));
+        }
+        assertEquals(10, elasticPool.getNumberOfThreads());
+
+        start.countDown();
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        Thread.sleep(500);
+        assertEquals(2, elasticPool.getNumberOfThreads());
+        elasticPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testElasticPoolReusesWorkerIndices()
+            throws LightExecutionException, InterruptedException {
+        var elasticPool = ThreadPool.builder()
+                .threads(0, 2)
+                .workerGroups(2)
+                .keepAlive(1, TimeUnit.MILLISECONDS)
+                .build();
+        // every round starts new workers in place of the retired ones
+        for (int round = 0; round < 10; round++) {
+            var start = new CountDownLatch(1);
+            var lightFutureList = new ArrayList<LightFuture<Integer>>();
+            for (int i = 0; i < 4; i++) {
+                int key = i;
+                lightFutureList.add(elasticPool.executeSharded(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    return key;
+                }, key));
+            }
+            assertEquals(2, elasticPool.getNumberOfThreads());
+            start.countDown();
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), lightFutureList.get(i).get());
+            }
+            while (elasticPool.getNumberOfThreads() != 0) {
+                Thread.sleep(1);
+            }
+        }
+        elasticPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testElasticPoolQueueDepthThreshold() throws InterruptedException {
+        var elasticPool = ThreadPool.builder()
+                .threads(1, 10)
+                .queueDepthThreshold(5)
+                .keepAlive(1, TimeUnit.MINUTES)
+                .build();
+        elasticPool.execute(() -> {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        Thread.sleep(100);
+        for (int i = 0; i < 5; i++) {
+            elasticPool.execute(() -> null);
+        }
+        assertEquals(1, elasticPool.getNumberOfThreads());
+
+        elasticPool.execute(() -> null);
+        assertEquals(2, elasticPool.getNumberOfThreads());
+        elasticPool.shutdownNow();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testElasticPoolQueueWaitThreshold() throws LightExecutionException,
+            InterruptedException {
+        var elasticPool = ThreadPool.builder()
+                .threads(1, 2)
+                .queueDepthThreshold(100)
+                .queueWaitThreshold(50, TimeUnit.MILLISECONDS)
+                .keepAlive(1, TimeUnit.MINUTES)
+                .build();
+        elasticPool.execute(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        var lightFuture = elasticPool.execute(() -> null);
+        lightFuture.get();
+        assertEquals(2, elasticPool.getNumberOfThreads());
+        elasticPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testElasticPoolWithoutPermanentThreads() throws LightExecutionException,
+            InterruptedException {
+        var elasticPool = ThreadPool.builder().threads(0, 4).queueDepthThreshold(10).build();
+        assertEquals(0, elasticPool.getNumberOfThreads());
+        assertEquals(42, (int)elasticPool.execute(() -> 42).get());
+        elasticPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testPriorityOrderOfTasks() throws LightExecutionException, InterruptedException {
+        var priorityPool = ThreadPool.newPriorityPool(1);
+        var started = new CountDownLatch(1);
+        var start = new CountDownLatch(1);
+        priorityPool.execute(() -> {
+            started.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        started.await();
+
+        var order = Collections.synchronizedList(new ArrayList<Integer>());
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int priority : new int[] {0, 5, -5, 10}) {
+            lightFutureList.add(priorityPool.execute(() -> order.add(priority), priority));
+        }
+        start.countDown();
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        assertEquals(List.of(10, 5, 0, -5), order);
+        priorityPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testPriorityAging() throws LightExecutionException, InterruptedException {
+        var priorityPool = ThreadPool.builder()
+                .priorityScheduling()
+                .agingQuantum(1, TimeUnit.MILLISECONDS)
+                .build();
+        var started = new CountDownLatch(1);
+        var start = new CountDownLatch(1);
+        priorityPool.execute(() -> {
+            started.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        started.await();
+
+        var order = Collections.synchronizedList(new ArrayList<String>());
+        var lowPriorityFuture = priorityPool.execute(() -> order.add("low"), -5);
+        Thread.sleep(50);
+        var normalFuture = priorityPool.execute(() -> order.add("normal"));
+        start.countDown();
+        lowPriorityFuture.get();
+        normalFuture.get();
+        assertEquals(List.of("low", "normal"), order);
+        priorityPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testDeadlineOrderOfTasks() throws LightExecutionException, InterruptedException {
+        var priorityPool = ThreadPool.newPriorityPool(1);
+        var started = new CountDownLatch(1);
+        var start = new CountDownLatch(1);
+        priorityPool.execute(() -> {
+            started.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        started.await();
+
+        var order = Collections.synchronizedList(new ArrayList<Integer>());
+        var now = Instant.now();
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int seconds : new int[] {30, 10, 20}) {
+            lightFutureList.add(priorityPool.execute(() -> order.add(seconds),
+                    now.plusSeconds(seconds)));
+        }
+        start.countDown();
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        assertEquals(List.of(10, 20, 30), order);
+        priorityPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExpiredDeadline() throws InterruptedException {
+        var currentThreadPool = new ThreadPool(1);
+        currentThreadPool.execute(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+
+        var isComputed = new AtomicBoolean(false);
+        var lightFuture = currentThreadPool.execute(() -> isComputed.getAndSet(true),
+                Instant.now().plusMillis(20));
+        var exception = assertThrows(LightExecutionException.class, lightFuture::get);
+        assertEquals(TimeoutException.class, exception.getCause().getClass());
+        assertFalse(isComputed.get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExpiredDeadlineWhileWorkerIsBlocked()
+            throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(ThreadPool.builder(), start);
+        var isComputed = new AtomicBoolean(false);
+        var lightFuture = currentThreadPool.execute(() -> isComputed.getAndSet(true),
+                Instant.now().plusMillis(20));
+        var dependentFuture = lightFuture.thenApply(x -> x);
+
+        // the only worker is still blocked, so get must not wait for it
+        var exception = assertThrows(LightExecutionException.class, lightFuture::get);
+        assertEquals(TimeoutException.class, exception.getCause().getClass());
+        assertTrue(lightFuture.isReady());
+        assertEquals(1, start.getCount());
+        assertEquals(1, currentThreadPool.getMetrics().getNumberOfFailedTasks());
+
+        start.countDown();
+        exception = assertThrows(LightExecutionException.class, dependentFuture::get);
+        assertEquals(TimeoutException.class, exception.getCause().getCause().getClass());
+        assertTrue(currentThreadPool.execute(() -> true).get());
+        assertFalse(isComputed.get());
+        assertEquals(2, currentThreadPool.getMetrics().getNumberOfFailedTasks());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testMetricsCounters() throws LightExecutionException, InterruptedException {
+        var currentThreadPool = new ThreadPool(2);
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int i = 0; i < 10; i++) {
+            lightFutureList.add(currentThreadPool.execute(() -> null));
+        }
+        for (int i = 0; i < 3; i++) {
+            lightFutureList.add(currentThreadPool.execute(() -> {
+                throw new RuntimeException();
+            }));
+        }
+        for (var lightFuture : lightFutureList) {
+            try {
+                lightFuture.get();
+            } catch (LightExecutionException ignored) {
+            }
+        }
+
+        var start = new CountDownLatch(1);
+        var blockingFuture = currentThreadPool.execute(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return 1;
+        });
+        var continuation = blockingFuture.thenApply((value) -> value + 1);
+        var metrics = currentThreadPool.getMetrics();
+        assertEquals(10, metrics.getNumberOfCompletedTasks());
+        assertEquals(3, metrics.getNumberOfFailedTasks());
+        assertEquals(1, metrics.getNumberOfContinuations());
+        assertEquals(1, metrics.getNumberOfPendingContinuations());
+
+        start.countDown();
+        assertEquals(Integer.valueOf(2), continuation.get());
+        metrics = currentThreadPool.getMetrics();
+        assertEquals(12, metrics.getNumberOfCompletedTasks());
+        assertEquals(0, metrics.getNumberOfPendingContinuations());
+        assertEquals(0, metrics.getNumberOfRejectedTasks());
+
+        currentThreadPool.shutdown();
+        assertThrows(IllegalStateException.class, () -> currentThreadPool.execute(() -> null));
+        assertEquals(1, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testMetricsHistograms() throws LightExecutionException, InterruptedException {
+        var currentThreadPool = new ThreadPool(1);
+        long sleepNanos = TimeUnit.MILLISECONDS.toNanos(50);
+        var blockingFuture = currentThreadPool.execute(() -> {
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleepNanos));
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        var lightFuture = currentThreadPool.execute(() -> null);
+        blockingFuture.get();
+        lightFuture.get();
+
+        var metrics = currentThreadPool.getMetrics();
+        var executionTime = metrics.getExecutionTime();
+        assertEquals(2, executionTime.getCount());
+        assertTrue(executionTime.getMax() >= sleepNanos);
+        assertTrue(executionTime.getValueAtPercentile(100) >= sleepNanos);
+        assertTrue(executionTime.getValueAtPercentile(50) < sleepNanos);
+
+        var queueWaitTime = metrics.getQueueWaitTime();
+        assertEquals(2, queueWaitTime.getCount());
+        assertTrue(queueWaitTime.getMax() >= sleepNanos / 2);
+        assertEquals(0, metrics.getQueueDepth());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testShutdownComputesQueuedTasks() throws LightExecutionException, InterruptedException {
+        var currentThreadPool = new ThreadPool(2);
+        var start = new CountDownLatch(1);
+        var lightFutureList = new ArrayList<LightFuture<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            int k = i;
+            lightFutureList.add(currentThreadPool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                return k;
+            }).thenApply((value) -> value * 2));
+        }
+        currentThreadPool.shutdown();
+        assertTrue(currentThreadPool.isShutdown());
+        assertThrows(IllegalStateException.class, () -> currentThreadPool.execute(() -> null));
+        assertFalse(currentThreadPool.awaitTermination(100, TimeUnit.MILLISECONDS));
+
+        start.countDown();
+        assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(currentThreadPool.isTerminated());
+        assertEquals(0, currentThreadPool.getNumberOfThreads());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i * 2), lightFutureList.get(i).get());
+        }
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testShutdownDrainsQueueInParallel() throws InterruptedException {
+        var currentThreadPool = new ThreadPool(BASE_THREAD_POOL_SIZE);
+        for (int i = 0; i < BASE_THREAD_POOL_SIZE * 2; i++) {
+            currentThreadPool.execute(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                return null;
+            });
+        }
+        long startTime = System.nanoTime();
+        currentThreadPool.shutdown();
+        assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testShutdownNow() throws LightExecutionException, InterruptedException {
+        var currentThreadPool = new ThreadPool(1);
+        var started = new CountDownLatch(1);
+        var blockingFuture = currentThreadPool.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException ignored) {
+                return 1;
+            }
+            return 0;
+        });
+        var continuation = blockingFuture.thenApply((value) -> value);
+        started.await();
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int i = 0; i < 5; i++) {
+            lightFutureList.add(currentThreadPool.execute(() -> null));
+        }
+
+        assertEquals(lightFutureList, currentThreadPool.shutdownNow());
+        for (var lightFuture : lightFutureList) {
+            var exception = assertThrows(LightExecutionException.class, lightFuture::get);
+            assertEquals(CancellationException.class, exception.getCause().getClass());
+        }
+        assertEquals(Integer.valueOf(1), blockingFuture.get());
+        var exception = assertThrows(LightExecutionException.class, continuation::get);
+        assertEquals(CancellationException.class, exception.getCause().getClass());
+        assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testAwaitTerminationOfIdlePools() throws InterruptedException {
+        for (var currentThreadPool : List.of(new ThreadPool(3),
+                ThreadPool.newWorkStealingPool(3),
+                ThreadPool.newLockFreePool(3, 16),
+                ThreadPool.newPriorityPool(3),
+                ThreadPool.newThreadPerTaskPool(3))) {
+            assertFalse(currentThreadPool.isTerminated());
+            currentThreadPool.shutdown();
+            assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testGetWithTimeout() throws LightExecutionException, InterruptedException,
+            TimeoutException {
+        var start = new CountDownLatch(1);
+        var lightFuture = threadPool.execute(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return 1;
+        });
+        assertThrows(TimeoutException.class, () -> lightFuture.get(50, TimeUnit.MILLISECONDS));
+        start.countDown();
+        assertEquals(Integer.valueOf(1), lightFuture.get(10, TimeUnit.SECONDS));
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testCancelQueuedTask() throws LightExecutionException, InterruptedException {
+        var currentThreadPool = new ThreadPool(1);
+        var start = new CountDownLatch(1);
+        var blockingFuture = currentThreadPool.execute(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        var isComputed = new AtomicBoolean(false);
+        var lightFuture = currentThreadPool.execute(() -> isComputed.getAndSet(true));
+
+        assertTrue(lightFuture.cancel(false));
+        assertTrue(lightFuture.isReady());
+        assertTrue(lightFuture.isCancelled());
+        assertFalse(lightFuture.cancel(false));
+        var exception = assertThrows(LightExecutionException.class, lightFuture::get);
+        assertEquals(CancellationException.class, exception.getCause().getClass());
+
+        start.countDown();
+        blockingFuture.get();
+        assertFalse(blockingFuture.cancel(true));
+        assertFalse(blockingFuture.isCancelled());
+        currentThreadPool.shutdown();
+        assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(isComputed.get());
+        assertEquals(1, currentThreadPool.getMetrics().getNumberOfCompletedTasks());
+        assertEquals(0, currentThreadPool.getMetrics().getNumberOfFailedTasks());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testCancelRunningTask() throws LightExecutionException, InterruptedException {
+        var currentThreadPool = new ThreadPool(1);
+        var started = new CountDownLatch(1);
+        var isInterrupted = new CountDownLatch(1);
+        var lightFuture = currentThreadPool.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                isInterrupted.countDown();
+            }
+            return 1;
+        });
+        started.await();
+        assertTrue(lightFuture.cancel(true));
+        assertTrue(lightFuture.isCancelled());
+        assertTrue(isInterrupted.await(10, TimeUnit.SECONDS));
+
+        var nextFuture = currentThreadPool.execute(() -> Thread.currentThread().isInterrupted());
+        assertFalse(nextFuture.get());
+        // the cancelled task has returned a value, but it is neither completed nor failed
+        assertEquals(1, currentThreadPool.getMetrics().getNumberOfCompletedTasks());
+        assertEquals(0, currentThreadPool.getMetrics().getNumberOfFailedTasks());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testCancelDependentTasks() throws InterruptedException {
+        var currentThreadPool = new ThreadPool(2);
+        var start = new CountDownLatch(1);
+        var lightFuture = currentThreadPool.execute(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return 1;
+        });
+        var numberOfComputedTasks = new AtomicInteger(0);
+        var children = new ArrayList<LightFuture<?>>();
+        var child = lightFuture.thenApply((value) -> numberOfComputedTasks.incrementAndGet());
+        children.add(child);
+        children.add(child.thenApply((value) -> numberOfComputedTasks.incrementAndGet()));
+        children.add(lightFuture.exceptionally((throwable) -> numberOfComputedTasks.get()));
+        children.add(lightFuture.thenCompose((value) -> currentThreadPool.execute(() -> value)));
+        children.add(lightFuture.whenComplete((value, throwable) ->
+                numberOfComputedTasks.incrementAndGet()));
+        var syncChild = lightFuture.thenApplySync((value) -> value);
+
+        assertTrue(lightFuture.cancel(false));
+        for (var cancelledFuture : children) {
+            assertTrue(cancelledFuture.isCancelled());
+        }
+        assertTrue(syncChild.isReady());
+        assertFalse(syncChild.isCancelled());
+        assertThrows(LightExecutionException.class, syncChild::get);
+        assertTrue(lightFuture.thenApply((value) -> value).isCancelled());
+
+        start.countDown();
+        currentThreadPool.shutdown();
+        assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, numberOfComputedTasks.get());
+        assertEquals(0, currentThreadPool.getMetrics().getNumberOfPendingContinuations());
+    }
+
+    /** Creates a pool with one thread which is blocked until start latch is released. */
+    private static ThreadPool newBlockedPool(ThreadPool.Builder builder, CountDownLatch start)
+            throws InterruptedException {
+        var currentThreadPool = builder.threads(1, 1).build();
+        var started = new CountDownLatch(1);
+        currentThreadPool.execute(() -> {
+            started.countDown();
+            try {
+                start.await();
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        });
+        started.await();
+        return currentThreadPool;
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testQueueCapacityFailFast() throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(2, RejectionPolicy.FAIL_FAST), start);
+        var lightFutureList = List.of(currentThreadPool.execute(() -> 1),
+                currentThreadPool.execute(() -> 2));
+        assertThrows(RejectedExecutionException.class, () -> currentThreadPool.execute(() -> 3));
+        assertEquals(1, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+
+        start.countDown();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Integer.valueOf(i + 1), lightFutureList.get(i).get());
+        }
+        assertEquals(Integer.valueOf(4), currentThreadPool.execute(() -> 4).get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExecuteAllFailFastRejectsWholeBatch()
+            throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(3, RejectionPolicy.FAIL_FAST), start);
+        var computedTasks = new AtomicInteger();
+        var queuedFuture = currentThreadPool.execute(computedTasks::incrementAndGet);
+        List<Supplier<Integer>> suppliers = Collections.nCopies(3, computedTasks::incrementAndGet);
+        assertThrows(RejectedExecutionException.class,
+                () -> currentThreadPool.executeAll(suppliers));
+        assertEquals(3, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+        assertEquals(1, currentThreadPool.getMetrics().getQueueDepth());
+
+        var lightFutureList = currentThreadPool.executeAll(suppliers.subList(0, 2));
+        start.countDown();
+        queuedFuture.get();
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        assertEquals(3, computedTasks.get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testExecuteAllReturnsAcceptedTasksWhenBlockingIsInterrupted()
+            throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(1, RejectionPolicy.BLOCK), start);
+        Thread.currentThread().interrupt();
+        var lightFutureList = currentThreadPool.executeAll(
+                List.<Supplier<Integer>>of(() -> 1, () -> 2, () -> 3));
+        assertTrue(Thread.interrupted());
+        assertEquals(3, lightFutureList.size());
+        assertFalse(lightFutureList.get(0).isReady());
+        for (int i = 1; i < 3; i++) {
+            var lightFuture = lightFutureList.get(i);
+            assertTrue(lightFuture.isReady());
+            var exception = assertThrows(LightExecutionException.class, lightFuture::get);
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(2, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+
+        start.countDown();
+        assertEquals(Integer.valueOf(1), lightFutureList.get(0).get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testQueueCapacityCallerRuns() throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(1, RejectionPolicy.CALLER_RUNS), start);
+        var queuedFuture = currentThreadPool.execute(() -> null);
+        var lightFuture = currentThreadPool.execute(Thread::currentThread);
+        assertTrue(lightFuture.isReady());
+        assertSame(Thread.currentThread(), lightFuture.get());
+        assertFalse(queuedFuture.isReady());
+        start.countDown();
+        queuedFuture.get();
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testQueueCapacityBlock() throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(1, RejectionPolicy.BLOCK), start);
+        currentThreadPool.execute(() -> null);
+        var blockedFuture = new AtomicReference<LightFuture<Integer>>();
+        var producer = new Thread(() -> blockedFuture.set(currentThreadPool.execute(() -> 1)));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        assertNull(blockedFuture.get());
+
+        start.countDown();
+        producer.join();
+        assertEquals(Integer.valueOf(1), blockedFuture.get().get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testQueueCapacityDropOldest() throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(2, RejectionPolicy.DROP_OLDEST), start);
+        var lightFutureList = new ArrayList<LightFuture<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            int k = i;
+            lightFutureList.add(currentThreadPool.execute(() -> k));
+        }
+        assertTrue(lightFutureList.get(0).isCancelled());
+        assertTrue(lightFutureList.get(1).isCancelled());
+        assertEquals(2, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+
+        start.countDown();
+        assertEquals(Integer.valueOf(2), lightFutureList.get(2).get());
+        assertEquals(Integer.valueOf(3), lightFutureList.get(3).get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testQueueCapacityDropOldestWithPriorities()
+            throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(ThreadPool.builder().priorityScheduling()
+                .queueCapacity(2, RejectionPolicy.DROP_OLDEST), start);
+        var highPriorityTask = currentThreadPool.execute(() -> "high", 10);
+        var lowPriorityTask = currentThreadPool.execute(() -> "low", -10);
+        var newestTask = currentThreadPool.execute(() -> "newest");
+        // the task which would be computed last is dropped, not the most urgent one
+        assertTrue(lowPriorityTask.isCancelled());
+        assertFalse(highPriorityTask.isCancelled());
+        assertEquals(1, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+
+        start.countDown();
+        assertEquals("high", highPriorityTask.get());
+        assertEquals("newest", newestTask.get());
+        currentThreadPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testQueuedTasksFinishedBeforeDequeue()
+            throws LightExecutionException, InterruptedException {
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(
+                ThreadPool.builder().queueCapacity(2, RejectionPolicy.DROP_OLDEST), start);
+        var cancelledTask = currentThreadPool.execute(() -> 1);
+        var secondTask = currentThreadPool.execute(() -> 2);
+        assertTrue(cancelledTask.cancel(false));
+        // the evicted task is already cancelled, so it only releases its space
+        var thirdTask = currentThreadPool.execute(() -> 3);
+        assertFalse(secondTask.isReady());
+        assertEquals(0, currentThreadPool.getMetrics().getNumberOfRejectedTasks());
+
+        // the worker takes the cancelled task from the queue but does not count its wait time
+        assertTrue(secondTask.cancel(false));
+        start.countDown();
+        assertEquals(Integer.valueOf(3), thirdTask.get());
+        currentThreadPool.shutdown();
+        assertTrue(currentThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+        var metrics = currentThreadPool.getMetrics();
+        assertEquals(0, metrics.getNumberOfRejectedTasks());
+        assertEquals(2, metrics.getNumberOfCompletedTasks());
+        assertEquals(2, metrics.getQueueWaitTime().getCount());
+        assertEquals(0, metrics.getQueueDepth());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testHighWaterMark() throws LightExecutionException, InterruptedException {
+        var events = Collections.synchronizedList(new ArrayList<String>());
+        var start = new CountDownLatch(1);
+        var currentThreadPool = newBlockedPool(ThreadPool.builder().highWaterMark(3, 1,
+                new QueueWatermarkListener() {
+                    @Override
+                    public void onHighWaterMark(int queueDepth) {
+                        events.add("high " + queueDepth);
+                    }
+
+                    @Override
+                    public void onLowWaterMark(int queueDepth) {
+                        events.add("low " + queueDepth);
+                    }
+                }), start);
+        var lightFutureList = new ArrayList<LightFuture<?>>();
+        for (int i = 0; i < 5; i++) {
+            lightFutureList.add(currentThreadPool.execute(() -> null));
+        }
+        assertEquals(List.of("high 3"), events);
+
+        start.countDown();
+        for (var lightFuture : lightFutureList) {
+            lightFuture.get();
+        }
+        assertEquals(List.of("high 3", "low 1"), events);
+        currentThreadPool.shutdown();
+    }
+
+    /** Computes the sum of numbers in the range recursively with subtasks joined by tasks. */
+    private static long recursiveSum(ThreadPool currentThreadPool, long from, long to)
+            throws InterruptedException, LightExecutionException {
+        if (to - from <= 16) {
+            long sum = 0;
+            for (long i = from; i < to; i++) {
+                sum += i;
+            }
+            return sum;
+        }
+        long middle = (from + to) / 2;
+        var left = currentThreadPool.execute(() -> {
+            try {
+                return recursiveSum(currentThreadPool, from, middle);
+            } catch (InterruptedException | LightExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        long rightSum = recursiveSum(currentThreadPool, middle, to);
+        return left.join() + rightSum;
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testJoinRecursiveTasks() throws LightExecutionException, InterruptedException {
+        final long numberOfElements = 100_000;
+        for (var currentThreadPool : List.of(new ThreadPool(1),
+                new ThreadPool(2),
+                ThreadPool.newWorkStealingPool(2),
+                ThreadPool.newLockFreePool(2, 16),
+                ThreadPool.newPriorityPool(2),
+                ThreadPool.newWorkerGroupPool(2, 2))) {
+            var lightFuture = currentThreadPool.execute(() -> {
+                try {
+                    return recursiveSum(currentThreadPool, 0, numberOfElements);
+                } catch (InterruptedException | LightExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            assertEquals(Long.valueOf(numberOfElements * (numberOfElements - 1) / 2),
+                    lightFuture.join());
+            assertTrue(currentThreadPool.getNumberOfThreads() <= 2);
+            currentThreadPool.shutdown();
+        }
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testJoinFailedTask() {
+        var lightFuture = threadPool.execute(() -> {
+            var subtask = threadPool.execute(() -> {
+                throw new IllegalArgumentException();
+            });
+            try {
+                return subtask.join();
+            } catch (InterruptedException | LightExecutionException e) {
+                return e.getCause();
+            }
+        });
+        assertDoesNotThrow(() -> assertEquals(IllegalArgumentException.class,
+                lightFuture.join().getClass()));
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testWorkerGroupPool() throws LightExecutionException, InterruptedException {
+        final int numberOfTasks = BASE_THREAD_POOL_SIZE * 30;
+        var workerGroupPool = ThreadPool.newWorkerGroupPool(BASE_THREAD_POOL_SIZE, 4);
+        var lightFutureList = new ArrayList<LightFuture<Integer>>();
+        for (int i = 0; i < numberOfTasks; i++) {
+            int value = i;
+            lightFutureList.add(workerGroupPool.executeSharded(() -> value, value % 7)
+                    .thenApply((x) -> x + 1));
+            lightFutureList.add(workerGroupPool.execute(() -> value));
+        }
+        for (int i = 0; i < numberOfTasks; i++) {
+            assertEquals(Integer.valueOf(i + 1), lightFutureList.get(2 * i).get());
+            assertEquals(Integer.valueOf(i), lightFutureList.get(2 * i + 1).get());
+        }
+        workerGroupPool.shutdown();
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testShardKeyIsIgnoredWithoutWorkerGroups() throws LightExecutionException,
+            InterruptedException {
+        assertEquals(Integer.valueOf(1), threadPool.executeSharded(() -> 1, "key").get());
+    }
+
+    @RepeatedTest(REPEATED_TEST_NUMBER)
+    void testWorkerGroupsWithPriorityScheduling() {
+        var builder = ThreadPool.builder().workerGroups(2).priorityScheduling();
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(IllegalArgumentException.class, () -> ThreadPool.builder().workerGroups(0));
+    }
 }
\ No newline at end of file